@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares link extractors on the test site pages and on perf_page.html repeated to a large size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkExtractionBenchmark {
+
+  private static final Pattern LINK_ATTRIBUTE = Pattern.compile("(href|src|poster|data|srcset|action|formaction)=\"");
+
+  @Param({"jsoup", "streaming"})
+  public String extractor;
+
+  // how many times the body of perf_page.html is repeated in the large page
+  @Param({"100", "5000"})
+  public int scale;
+
+  private LinkExtractor linkExtractor;
+  private List<String> testPages;
+  private String largePage;
+
+  @Setup
+  public void setUp() throws IOException, URISyntaxException {
+    linkExtractor = extractor.equals("jsoup") ? new JsoupLinkExtractor() : new StreamingLinkExtractor();
+    testPages = loadTestPages();
+    largePage = generateLargePage(scale);
+  }
+
+  @Benchmark
+  public void testPages(Blackhole blackhole) throws IOException {
+    for (String page : testPages) {
+      blackhole.consume(linkExtractor.extract(new StringReader(page), "http://localhost/page.html"));
+    }
+  }
+
+  @Benchmark
+  public Object largePage() throws IOException {
+    return linkExtractor.extract(new StringReader(largePage), "http://localhost/perf_page.html");
+  }
+
+  static List<String> loadTestPages() throws IOException, URISyntaxException {
+    URI web = LinkExtractionBenchmark.class.getResource("/web").toURI();
+    if (web.getScheme().equals("jar")) {
+      try (FileSystem jar = FileSystems.newFileSystem(web, Collections.emptyMap())) {
+        return readPages(jar.getPath("/web"));
+      }
+    }
+    return readPages(Paths.get(web));
+  }
+
+  private static List<String> readPages(Path dir) throws IOException {
+    List<String> pages = new ArrayList<>();
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path file : files.filter(p -> p.toString().endsWith(".html")).sorted().collect(Collectors.toList())) {
+        pages.add(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+      }
+    }
+    return pages;
+  }
+
+  // repeats the body of perf_page.html, each copy refers to its own directory so that all the links are distinct
+  static String generateLargePage(int scale) throws IOException {
+    String page;
+    try (InputStream in = LinkExtractionBenchmark.class.getResourceAsStream("/web/perf_page.html")) {
+      page = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    int bodyStart = page.indexOf("<body>") + "<body>".length();
+    int bodyEnd = page.indexOf("</body>");
+    String body = page.substring(bodyStart, bodyEnd);
+    StringBuilder result = new StringBuilder(page.substring(0, bodyStart));
+    for (int i = 0; i < scale; i++) {
+      result.append(LINK_ATTRIBUTE.matcher(body).replaceAll("$1=\"copy" + i + "/"));
+    }
+    return result.append(page.substring(bodyEnd)).toString();
+  }
+}
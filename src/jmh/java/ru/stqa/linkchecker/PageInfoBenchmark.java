@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of adding a page with links to the results, which interns the links into the link graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageInfoBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int linkCount;
+
+  private Set<String> links;
+  private ScanResults results;
+
+  @Setup
+  public void setUp() {
+    results = new ScanResults();
+    links = new HashSet<>();
+    for (int i = 0; i < linkCount; i++) {
+      links.add("http://localhost/section" + (i % 10) + "/page" + i + ".html");
+    }
+  }
+
+  @Benchmark
+  public PageInfo addWithLinks() {
+    PageInfo pageInfo = PageInfo.done("http://localhost/index.html").httpStatus(200).contentType("text/html").links(links).build();
+    results.addPageInfo(pageInfo);
+    return pageInfo;
+  }
+}
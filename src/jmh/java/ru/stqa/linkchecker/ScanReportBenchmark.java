@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing a ScanReport for a large synthetic site: every page links to the shared navigation pages
+ * and to a few random pages, one page in a hundred is broken.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ScanReportBenchmark {
+
+  private static final int NAVIGATION_LINKS = 20;
+  private static final int RANDOM_LINKS = 10;
+
+  @Param({"1000000"})
+  public int pageCount;
+
+  private ScanResults results;
+  private Path report;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    results = new ScanResults();
+    for (int i = 0; i < pageCount; i++) {
+      String url = page(i);
+      if (i % 100 == 99) {
+        results.addPageInfo(PageInfo.done(url).httpStatus(404).build());
+        continue;
+      }
+      Set<String> links = new HashSet<>();
+      for (int j = 0; j < NAVIGATION_LINKS; j++) {
+        links.add(page(j));
+      }
+      for (int j = 0; j < RANDOM_LINKS; j++) {
+        links.add(page(random.nextInt(pageCount)));
+      }
+      results.addPageInfo(PageInfo.done(url).httpStatus(200).contentType("text/html").links(links).build());
+    }
+  }
+
+  @Setup
+  public void createReportFile() throws IOException {
+    report = Files.createTempFile("report", ".html");
+  }
+
+  @Benchmark
+  public void writeReport() throws IOException {
+    new ScanReport(results).saveTo(report.toString());
+  }
+
+  private static String page(int i) {
+    return "http://localhost/section" + (i % 100) + "/page" + i + ".html";
+  }
+}
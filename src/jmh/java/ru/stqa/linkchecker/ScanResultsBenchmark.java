@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures ScanResults.addPageInfo when many workers report pages at once, each page is reported twice
+ * like a real scan does: first in progress, then done.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class ScanResultsBenchmark {
+
+  private static final AtomicInteger threadIds = new AtomicInteger();
+
+  private ScanResults results;
+
+  @State(Scope.Thread)
+  public static class Worker {
+    private final String prefix = "http://localhost/worker" + threadIds.incrementAndGet() + "/page";
+    private int next;
+
+    String nextUrl() {
+      return prefix + (next++) + ".html";
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    results = new ScanResults();
+  }
+
+  @Benchmark
+  public void addPageInfo(Worker worker) {
+    String url = worker.nextUrl();
+    results.addPageInfo(PageInfo.inProgress(url).build());
+    results.addPageInfo(PageInfo.done(url).httpStatus(200).build());
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+class ApacheHttpTransport implements HttpTransport {
+
+  private final CloseableHttpClient httpclient;
+  private final CachingDnsResolver dnsResolver;
+  private final ScanMetrics metrics;
+  private final int requestTimeout;
+  // aborts requests that are not over by their deadline, the client itself only limits the time between packets
+  private final ScheduledThreadPoolExecutor deadlines = new ScheduledThreadPoolExecutor(1, r -> {
+    Thread thread = new Thread(r, "request-deadlines");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  ApacheHttpTransport(ScanSettings settings, ScanMetrics metrics) {
+    this.metrics = metrics;
+    // most requests complete in time, their deadlines should not pile up in the queue
+    deadlines.setRemoveOnCancelPolicy(true);
+
+    dnsResolver = new CachingDnsResolver(SystemDefaultDnsResolver.INSTANCE, settings);
+    PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(
+      MeteredConnectionOperator.create(metrics, dnsResolver), null, -1, TimeUnit.MILLISECONDS);
+    cm.setMaxTotal(settings.getThreadCount());
+    cm.setDefaultMaxPerRoute(settings.getMaxConnectionsPerHost() > 0
+      ? Math.min(settings.getMaxConnectionsPerHost(), settings.getThreadCount())
+      : settings.getThreadCount());
+
+    requestTimeout = settings.getRequestTimeout();
+    httpclient = HttpClients.custom().setConnectionManager(cm)
+      .setDefaultRequestConfig(RequestConfig.custom()
+        .setCookieSpec(CookieSpecs.STANDARD)
+        .setConnectTimeout(settings.getConnectTimeout())
+        .setSocketTimeout(settings.getSocketTimeout())
+        .setConnectionRequestTimeout(requestTimeout)
+        .build())
+      .build();
+  }
+
+  @Override
+  public CompletableFuture<FetchResponse> fetch(String url, Map<String, String> headers, Predicate<FetchResponse> readBody) {
+    // the body is streamed on demand, so there is no need to consult readBody
+    return execute(() -> {
+      HttpGet request = new HttpGet(url);
+      headers.forEach(request::addHeader);
+      return request;
+    });
+  }
+
+  @Override
+  public CompletableFuture<FetchResponse> head(String url) {
+    return execute(() -> new HttpHead(url));
+  }
+
+  private CompletableFuture<FetchResponse> execute(Supplier<HttpUriRequest> requestSupplier) {
+    HttpUriRequest request = requestSupplier.get();
+    ScheduledFuture<?> deadline = requestTimeout > 0
+      ? deadlines.schedule(request::abort, requestTimeout, TimeUnit.MILLISECONDS)
+      : null;
+    try {
+      HttpClientContext context = HttpClientContext.create();
+      long start = System.nanoTime();
+      CloseableHttpResponse response = httpclient.execute(request, context);
+      long firstByte = System.nanoTime() - start;
+      Object setup = context.getAttribute(MeteredConnectionOperator.SETUP_NANOS);
+      if (setup instanceof Long) {
+        firstByte -= (Long) setup;
+      } else {
+        metrics.connectionReused();
+      }
+      metrics.record(FetchPhase.FIRST_BYTE, firstByte);
+      return CompletableFuture.completedFuture(new ApacheFetchResponse(response, request, deadline));
+    } catch (Exception e) {
+      if (deadline != null) {
+        deadline.cancel(false);
+      }
+      return CompletableFuture.failedFuture(request.isAborted() ? timeout() : e);
+    }
+  }
+
+  @Override
+  public void prefetch(String url) {
+    try {
+      String host = URI.create(url).getHost();
+      if (host != null) {
+        dnsResolver.prefetch(host);
+      }
+    } catch (IllegalArgumentException e) {
+      // the request is going to fail anyway
+    }
+  }
+
+  private SocketTimeoutException timeout() {
+    return new SocketTimeoutException(String.format("Request is not complete in %s ms", requestTimeout));
+  }
+
+  @Override
+  public void close() throws IOException {
+    deadlines.shutdownNow();
+    dnsResolver.close();
+    httpclient.close();
+  }
+
+  private class ApacheFetchResponse implements FetchResponse {
+
+    private final CloseableHttpResponse response;
+    private final HttpUriRequest request;
+    private final ScheduledFuture<?> deadline;
+
+    ApacheFetchResponse(CloseableHttpResponse response, HttpUriRequest request, ScheduledFuture<?> deadline) {
+      this.response = response;
+      this.request = request;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public int getStatusCode() {
+      return response.getStatusLine().getStatusCode();
+    }
+
+    @Override
+    public List<String> getHeaders(String name) {
+      return Arrays.stream(response.getHeaders(name)).map(Header::getValue).collect(Collectors.toList());
+    }
+
+    @Override
+    public Reader getBodyReader() throws IOException {
+      HttpEntity entity = response.getEntity();
+      if (entity == null) {
+        return new StringReader("");
+      }
+      Charset charset;
+      try {
+        charset = ContentType.getOrDefault(entity).getCharset();
+      } catch (RuntimeException e) {
+        charset = null;
+      }
+      return new InputStreamReader(new BodyInputStream(entity.getContent()),
+        charset != null ? charset : StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (deadline != null) {
+        deadline.cancel(false);
+      }
+      response.close();
+    }
+
+    // counts the body and the time spent waiting for it, and reports a body cut off by the deadline
+    // as a timeout rather than as a closed connection
+    private class BodyInputStream extends FilterInputStream {
+
+      private long bytes;
+      private long nanos;
+      private boolean recorded;
+
+      BodyInputStream(InputStream in) {
+        super(in);
+      }
+
+      @Override
+      public int read() throws IOException {
+        long start = System.nanoTime();
+        try {
+          int b = super.read();
+          count(b < 0 ? -1 : 1, start);
+          return b;
+        } catch (IOException e) {
+          throw request.isAborted() ? timeout() : e;
+        }
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        try {
+          int n = super.read(b, off, len);
+          count(n, start);
+          return n;
+        } catch (IOException e) {
+          throw request.isAborted() ? timeout() : e;
+        }
+      }
+
+      private void count(int n, long start) {
+        nanos += System.nanoTime() - start;
+        if (n > 0) {
+          bytes += n;
+        } else if (n < 0) {
+          record();
+        }
+      }
+
+      private void record() {
+        if (!recorded) {
+          recorded = true;
+          metrics.record(FetchPhase.DOWNLOAD, nanos);
+          metrics.addBytesDownloaded(bytes);
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        record();
+        super.close();
+      }
+    }
+  }
+}
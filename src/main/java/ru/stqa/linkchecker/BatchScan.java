@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Scans many targets in one JVM. A few sessions run at a time, all of them share a transport, the results
+ * of checked links and a budget of requests in flight, see {@link SharedScanResources}.
+ */
+class BatchScan {
+
+  private final List<ScanSettings> targets;
+  private final SharedScanResources shared;
+  private final int parallelTargets;
+
+  /**
+   * @param parallelTargets the number of sessions that run at the same time
+   */
+  BatchScan(List<ScanSettings> targets, SharedScanResources shared, int parallelTargets) {
+    this.targets = targets;
+    this.shared = shared;
+    this.parallelTargets = parallelTargets;
+  }
+
+  /**
+   * Scans all the targets, the callback gets the index of each target and its session as soon as the scan is over.
+   */
+  void run(BiConsumer<Integer, ScanSession> done) throws InterruptedException {
+    ExecutorService service = Executors.newFixedThreadPool(Math.max(1, parallelTargets));
+    for (int i = 0; i < targets.size(); i++) {
+      int index = i;
+      service.submit(() -> {
+        try {
+          ScanSession session = new ScanSession(targets.get(index), shared);
+          session.run();
+          done.accept(index, session);
+        } catch (RuntimeException e) {
+          // a failed target does not stop the others
+          e.printStackTrace();
+        }
+      });
+    }
+    service.shutdown();
+    service.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Reads target URLs one per line, skipping empty lines and lines starting with #.
+   */
+  static List<String> readTargets(Reader in) throws IOException {
+    List<String> targets = new ArrayList<>();
+    BufferedReader reader = new BufferedReader(in);
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        targets.add(line);
+      }
+    }
+    return targets;
+  }
+
+  /**
+   * Makes a file name for the report of a target, the index keeps names unique and in the order of the list.
+   */
+  static String reportName(int index, String url) {
+    String name = url.replaceFirst("^[a-zA-Z][a-zA-Z0-9+.-]*://", "").replaceAll("[^a-zA-Z0-9.-]+", "_");
+    if (name.length() > 100) {
+      name = name.substring(0, 100);
+    }
+    return String.format("%03d-%s.html", index + 1, name.replaceAll("^_+|_+$", ""));
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ru.stqa.linkchecker;
+
+import org.apache.http.conn.DnsResolver;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves host names for the connection manager and remembers the answers, names that do not resolve
+ * included, so that a dead host is looked up once rather than once per link. Hosts can be resolved ahead
+ * of their first request on background threads, a request that comes while the lookup is running waits for it
+ * instead of starting another one, and a request for a host that is still queued for prefetching resolves it
+ * on its own thread rather than waiting for the lookups of other hosts.
+ */
+class CachingDnsResolver implements DnsResolver, Closeable {
+
+  private static final int PREFETCH_THREADS = 4;
+  // expired answers are purged when the number of hosts doubles since the previous purge
+  private static final int MIN_PURGE_SIZE = 1024;
+
+  private final DnsResolver delegate;
+  private final long positiveTtl;
+  private final long negativeTtl;
+  private final ConcurrentHashMap<String, Lookup> lookups = new ConcurrentHashMap<>();
+  private final ExecutorService prefetcher;
+  private volatile int purgeSize = MIN_PURGE_SIZE;
+
+  CachingDnsResolver(DnsResolver delegate, ScanSettings settings) {
+    this(delegate, settings.getDnsCacheTtl(), settings.getDnsNegativeCacheTtl());
+  }
+
+  /**
+   * @param delegate resolves the names that are not in the cache
+   * @param positiveTtl how long the addresses of a host are used, in milliseconds
+   * @param negativeTtl how long a name that does not resolve is not looked up again, in milliseconds
+   */
+  CachingDnsResolver(DnsResolver delegate, long positiveTtl, long negativeTtl) {
+    this.delegate = delegate;
+    this.positiveTtl = positiveTtl;
+    this.negativeTtl = negativeTtl;
+    AtomicInteger threadCounter = new AtomicInteger();
+    this.prefetcher = Executors.newFixedThreadPool(PREFETCH_THREADS, r -> {
+      Thread thread = new Thread(r, "dns-prefetch-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public InetAddress[] resolve(String host) throws UnknownHostException {
+    return resolve(host, System.currentTimeMillis());
+  }
+
+  InetAddress[] resolve(String host, long now) throws UnknownHostException {
+    Lookup lookup = lookups.get(host);
+    if (lookup == null || lookup.isExpired(now)) {
+      // nobody has started the lookup, it runs on the calling thread
+      lookup = lookup(host, now, Runnable::run);
+    } else if (lookup.claim()) {
+      // the prefetch is still in the queue, it is done here and skipped there
+      run(host, lookup, now);
+    }
+    return lookup.await();
+  }
+
+  void prefetch(String host) {
+    prefetch(host, System.currentTimeMillis());
+  }
+
+  /**
+   * Starts resolving the host on a background thread, unless the answer is already known or on its way.
+   */
+  void prefetch(String host, long now) {
+    Lookup lookup = lookups.get(host);
+    if (lookup == null || lookup.isExpired(now)) {
+      lookup(host, now, prefetcher);
+    }
+  }
+
+  int size() {
+    return lookups.size();
+  }
+
+  private Lookup lookup(String host, long now, Executor executor) {
+    Lookup created = new Lookup();
+    Lookup current = lookups.compute(host, (h, old) -> old != null && !old.isExpired(now) ? old : created);
+    if (current == created) {
+      if (lookups.size() >= purgeSize) {
+        purge(now);
+      }
+      try {
+        executor.execute(() -> {
+          if (created.claim()) {
+            run(host, created, now);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // the resolver is closed, a request for the host is going to resolve it by itself
+      }
+    }
+    return current;
+  }
+
+  private void purge(long now) {
+    lookups.values().removeIf(lookup -> lookup.isExpired(now));
+    purgeSize = Math.max(MIN_PURGE_SIZE, lookups.size() * 2);
+  }
+
+  private void run(String host, Lookup lookup, long now) {
+    try {
+      InetAddress[] addresses = delegate.resolve(host);
+      lookup.expiresAt = now + positiveTtl;
+      lookup.result.complete(addresses);
+    } catch (UnknownHostException e) {
+      lookup.expiresAt = now + negativeTtl;
+      lookup.result.completeExceptionally(e);
+    } catch (RuntimeException e) {
+      // not an answer about the host, the next request asks again
+      lookups.remove(host, lookup);
+      lookup.result.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Stops prefetching, the hosts that are still queued for it are forgotten.
+   */
+  @Override
+  public void close() {
+    prefetcher.shutdownNow();
+    lookups.forEach((host, lookup) -> {
+      if (lookup.claim()) {
+        lookups.remove(host, lookup);
+        lookup.result.completeExceptionally(new UnknownHostException("The resolver is closed"));
+      }
+    });
+  }
+
+  private static class Lookup {
+
+    private final CompletableFuture<InetAddress[]> result = new CompletableFuture<>();
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    // a lookup in progress never expires, the ones that wait for it would start another
+    private volatile long expiresAt = Long.MAX_VALUE;
+
+    // the one that claims the lookup runs it, the others wait for the result
+    boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+
+    boolean isExpired(long now) {
+      return now >= expiresAt;
+    }
+
+    InetAddress[] await() throws UnknownHostException {
+      try {
+        return result.get().clone();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof UnknownHostException) {
+          // a copy, so that the stack trace shows the request that failed
+          UnknownHostException copy = new UnknownHostException(cause.getMessage());
+          copy.initCause(cause);
+          throw copy;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new UnknownHostException("Interrupted while resolving the host");
+      }
+    }
+  }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * A node of a cluster of link checkers that scan a site together. Hosts are split between the nodes
+ * by a {@link HostRing}, each node scans the hosts it owns and sends the URLs of other hosts to their owners
+ * in batches over TCP. The first node in the list is the coordinator: it polls the nodes until all of them are idle
+ * and every URL sent was received, then stops them and merges their results into its own.
+ * A node that fails to take URLs from another node reports it to the coordinator, that fails the scan,
+ * because the results would miss the pages behind the lost URLs.
+ */
+class ClusterNode implements UrlRouter, Closeable {
+
+  private static final byte URLS = 1;
+  private static final byte STATUS = 2;
+  private static final byte STOP = 3;
+
+  private static final int BATCH_SIZE = 512;
+  private static final long POLL_INTERVAL = 100;
+  // the time the coordinator waits for a node that does not answer
+  private static final long NODE_TIMEOUT = 60_000;
+
+  private final ScanSession session;
+  private final List<InetSocketAddress> nodes;
+  private final int index;
+  private final HostRing ring;
+  private final List<Peer> peers = new ArrayList<>();
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong received = new AtomicLong();
+  // URLs given to peers and not written to a socket yet
+  private final AtomicInteger unsent = new AtomicInteger();
+  private final CountDownLatch stopped = new CountDownLatch(1);
+  private ServerSocket server;
+  private volatile boolean closed;
+  // the first error of the connections of this node, the scan of the cluster is incomplete then
+  private volatile IOException failure;
+
+  /**
+   * @param nodes addresses of all the nodes, in the same order on every node
+   * @param index the position of this node in the list
+   */
+  ClusterNode(ScanSession session, List<InetSocketAddress> nodes, int index) {
+    this.session = session;
+    this.nodes = nodes;
+    this.index = index;
+    this.ring = new HostRing(nodes.stream().map(a -> a.getHostString() + ":" + a.getPort()).collect(Collectors.toList()));
+    for (int i = 0; i < nodes.size(); i++) {
+      peers.add(i == index ? null : new Peer(nodes.get(i)));
+    }
+  }
+
+  /**
+   * Parses a node address in the host:port form.
+   */
+  static InetSocketAddress address(String node) {
+    int colon = node.lastIndexOf(':');
+    if (colon < 0) {
+      throw new IllegalArgumentException("Node address must be host:port, but was " + node);
+    }
+    return new InetSocketAddress(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1)));
+  }
+
+  /**
+   * Starts listening to other nodes and joins the session to the cluster, must be called before the session is run.
+   */
+  void start() throws IOException {
+    server = new ServerSocket();
+    server.setReuseAddress(true);
+    server.bind(nodes.get(index));
+    session.joinCluster(this);
+    daemon("cluster-node-" + index, this::accept).start();
+    for (int i = 0; i < peers.size(); i++) {
+      if (peers.get(i) != null) {
+        daemon("cluster-peer-" + i, peers.get(i)::run).start();
+      }
+    }
+  }
+
+  boolean isCoordinator() {
+    return index == 0;
+  }
+
+  @Override
+  public boolean isLocal(String url) {
+    return ring.ownerOf(url) == index;
+  }
+
+  @Override
+  public void forward(String url) {
+    unsent.incrementAndGet();
+    peers.get(ring.ownerOf(url)).queue.add(url);
+  }
+
+  private boolean isIdle() {
+    return session.isIdle() && unsent.get() == 0;
+  }
+
+  /**
+   * Waits until the scan is over on all the nodes, then stops the other nodes and adds their pages to the results
+   * of the local session, and finally stops the local session. Only the coordinator does that.
+   */
+  void awaitCompletion() throws IOException, InterruptedException {
+    long[] previous = null;
+    long[] lastSeen = new long[nodes.size()];
+    Arrays.fill(lastSeen, System.currentTimeMillis());
+    while (true) {
+      Thread.sleep(POLL_INTERVAL);
+      // idleness, sent and received of every node
+      long[] wave = new long[nodes.size() * 3];
+      boolean idle = true;
+      if (failure != null) {
+        throw new IOException("The scan is incomplete", failure);
+      }
+      for (int i = 0; i < nodes.size(); i++) {
+        long[] status = i == index ? new long[]{isIdle() ? 1 : 0, sent.get(), received.get(), 0} : requestStatus(i);
+        if (status == null) {
+          if (System.currentTimeMillis() - lastSeen[i] > NODE_TIMEOUT) {
+            throw new IOException("Node " + nodes.get(i) + " does not answer");
+          }
+          idle = false;
+          continue;
+        }
+        if (status[3] != 0) {
+          throw new IOException("Node " + nodes.get(i) + " failed, the scan is incomplete");
+        }
+        lastSeen[i] = System.currentTimeMillis();
+        System.arraycopy(status, 0, wave, i * 3, 3);
+        idle &= status[0] == 1;
+      }
+      long totalSent = 0;
+      long totalReceived = 0;
+      for (int i = 0; i < nodes.size(); i++) {
+        totalSent += wave[i * 3 + 1];
+        totalReceived += wave[i * 3 + 2];
+      }
+      // a URL can be on the way while the nodes are polled one by one, so the same picture must be seen twice
+      boolean quiet = idle && totalSent == totalReceived;
+      if (quiet && Arrays.equals(wave, previous)) {
+        break;
+      }
+      previous = quiet ? wave : null;
+    }
+
+    for (int i = 0; i < nodes.size(); i++) {
+      if (i != index) {
+        collectResults(i);
+      }
+    }
+    session.interrupt();
+  }
+
+  /**
+   * Waits until the coordinator stops this node and takes its results.
+   */
+  void awaitStop() throws InterruptedException {
+    stopped.await();
+  }
+
+  // returns null if the node is not available
+  private long[] requestStatus(int node) {
+    try (Socket socket = new Socket()) {
+      socket.connect(nodes.get(node), (int) NODE_TIMEOUT);
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      out.writeByte(STATUS);
+      out.flush();
+      return new long[]{in.readBoolean() ? 1 : 0, in.readLong(), in.readLong(), in.readBoolean() ? 1 : 0};
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void collectResults(int node) throws IOException {
+    try (Socket socket = new Socket()) {
+      socket.connect(nodes.get(node), (int) NODE_TIMEOUT);
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+      out.writeByte(STOP);
+      out.flush();
+      int length;
+      while ((length = in.readInt()) > 0) {
+        byte[] record = new byte[length];
+        in.readFully(record);
+        session.getResults().addPageInfo(ScanJournal.readPage(ByteBuffer.wrap(record)));
+      }
+    }
+  }
+
+  private void accept() {
+    while (!closed) {
+      try {
+        Socket socket = server.accept();
+        daemon("cluster-connection", () -> serve(socket)).start();
+      } catch (IOException e) {
+        if (!closed && failure == null) {
+          failure = e;
+        }
+        return;
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (Socket s = socket) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16));
+      int type;
+      while ((type = in.read()) >= 0) {
+        switch (type) {
+          case URLS:
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+              session.submit(BinaryStrings.read(in));
+            }
+            // counted after the URLs are in the frontier, so that the coordinator never sees them nowhere
+            received.addAndGet(count);
+            break;
+          case STATUS:
+            out.writeBoolean(isIdle());
+            out.writeLong(sent.get());
+            out.writeLong(received.get());
+            out.writeBoolean(failure != null);
+            out.flush();
+            break;
+          case STOP:
+            sendResults(out);
+            stopped.countDown();
+            return;
+          default:
+            throw new IOException("Unknown message " + type);
+        }
+      }
+    } catch (EOFException ignore) {
+    } catch (IOException e) {
+      if (!closed && failure == null) {
+        failure = e;
+      }
+    }
+  }
+
+  private void sendResults(DataOutputStream out) throws IOException {
+    session.interrupt();
+    while (!session.isStopped()) {
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      }
+    }
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    DataOutputStream record = new DataOutputStream(buffer);
+    for (PageInfo page : session.getResults().getScannedPages()) {
+      buffer.reset();
+      ScanJournal.writePage(record, page);
+      record.flush();
+      out.writeInt(buffer.size());
+      buffer.writeTo(out);
+    }
+    out.writeInt(0);
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    if (server != null) {
+      server.close();
+    }
+    for (Peer peer : peers) {
+      if (peer != null) {
+        peer.disconnect();
+      }
+    }
+  }
+
+  private static Thread daemon(String name, Runnable task) {
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  /**
+   * Sends URLs to another node. Whatever has piled up while the previous batch was written goes in the next one,
+   * so batches grow with the load and a single URL does not wait for company.
+   */
+  private class Peer {
+
+    private final InetSocketAddress address;
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    private volatile Socket socket;
+    private DataOutputStream out;
+
+    Peer(InetSocketAddress address) {
+      this.address = address;
+    }
+
+    void run() {
+      List<String> batch = new ArrayList<>(BATCH_SIZE);
+      try {
+        while (!closed) {
+          String url = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+          if (url == null) {
+            continue;
+          }
+          batch.add(url);
+          queue.drainTo(batch, BATCH_SIZE - 1);
+          send(batch);
+          sent.addAndGet(batch.size());
+          unsent.addAndGet(-batch.size());
+          batch.clear();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    // keeps trying until the batch is written, the node may be not started yet or restarting
+    private void send(List<String> batch) throws InterruptedException {
+      while (!closed) {
+        try {
+          if (socket == null) {
+            socket = new Socket();
+            socket.connect(address, (int) NODE_TIMEOUT);
+            socket.setTcpNoDelay(true);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+          }
+          out.writeByte(URLS);
+          out.writeInt(batch.size());
+          for (String url : batch) {
+            BinaryStrings.write(out, url);
+          }
+          out.flush();
+          return;
+        } catch (IOException e) {
+          disconnect();
+          Thread.sleep(POLL_INTERVAL);
+        }
+      }
+    }
+
+    void disconnect() {
+      Socket current = socket;
+      socket = null;
+      if (current != null) {
+        try {
+          current.close();
+        } catch (IOException ignore) {
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+/**
+ * An adaptive limit of requests in flight. It grows while latency stays close to the best seen so far
+ * and nothing fails, and shrinks when latency climbs or the server is overloaded: answers with 429 or 5xx,
+ * connection errors and timeouts. The growth is additive, one request per window of {@code limit} responses,
+ * and the cuts are multiplicative and happen at most once a window, as in TCP congestion control.
+ * Until the first cut the limit grows by one request per response, so a scan finds its pace quickly.
+ */
+class ConcurrencyLimiter {
+
+  // latency more than this many times the baseline means that requests are queued somewhere
+  private static final double LATENCY_TOLERANCE = 2.0;
+  private static final double LATENCY_BACKOFF = 0.9;
+  private static final double OVERLOAD_BACKOFF = 0.5;
+  // lets the baseline follow a server that became slower for good
+  private static final double BASELINE_DRIFT = 0.01;
+
+  private final int maxLimit;
+  private volatile double limit;
+  private double baselineNanos = -1;
+  private boolean slowStart = true;
+  private int samplesSinceCut;
+
+  /**
+   * @param initialLimit the limit to begin with
+   * @param maxLimit the limit never goes above this number, nor below one
+   */
+  ConcurrencyLimiter(int initialLimit, int maxLimit) {
+    this.maxLimit = maxLimit;
+    this.limit = Math.max(1, Math.min(initialLimit, maxLimit));
+  }
+
+  int getLimit() {
+    return (int) limit;
+  }
+
+  /**
+   * Takes the outcome of a request into account.
+   *
+   * @param latencyNanos the time the request took
+   * @param overloaded true if the server answered with 429 or 5xx, or the request failed to connect or timed out
+   */
+  synchronized void onSample(long latencyNanos, boolean overloaded) {
+    samplesSinceCut++;
+    if (overloaded) {
+      cut(OVERLOAD_BACKOFF);
+      return;
+    }
+    if (baselineNanos < 0 || latencyNanos < baselineNanos) {
+      baselineNanos = latencyNanos;
+    } else {
+      baselineNanos += (latencyNanos - baselineNanos) * BASELINE_DRIFT;
+    }
+    if (latencyNanos > baselineNanos * LATENCY_TOLERANCE) {
+      cut(LATENCY_BACKOFF);
+    } else {
+      grow();
+    }
+  }
+
+  /**
+   * Takes the outcome of a request into account regardless of its latency, for the requests whose latencies
+   * can not be compared with each other, like the ones to different hosts.
+   *
+   * @param overloaded true if the server answered with 429 or 5xx, or the request failed to connect or timed out
+   */
+  synchronized void onSample(boolean overloaded) {
+    samplesSinceCut++;
+    if (overloaded) {
+      cut(OVERLOAD_BACKOFF);
+    } else {
+      grow();
+    }
+  }
+
+  private void grow() {
+    if (slowStart) {
+      limit = Math.min(maxLimit, limit + 1);
+    } else {
+      limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+  }
+
+  private void cut(double factor) {
+    if (!slowStart && samplesSinceCut < limit) {
+      // the responses of the window were sent before the previous cut took effect
+      return;
+    }
+    slowStart = false;
+    samplesSinceCut = 0;
+    limit = Math.max(1, limit * factor);
+  }
+}
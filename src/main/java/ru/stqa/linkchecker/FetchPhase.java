@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+/**
+ * The phases of fetching and scanning a page that are timed separately.
+ */
+public enum FetchPhase {
+  /** Resolving the host name. */
+  DNS,
+  /** Establishing a TCP connection. */
+  CONNECT,
+  /** TLS handshake. */
+  TLS,
+  /** From sending the request to receiving the response headers, without establishing the connection. */
+  FIRST_BYTE,
+  /** Receiving the response body. */
+  DOWNLOAD,
+  /** Extracting links from the body, without waiting for the data. */
+  PARSE,
+  /** The whole check of a page, from the start of the request to the result. */
+  TOTAL
+}
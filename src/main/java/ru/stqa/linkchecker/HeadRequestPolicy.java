@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the hosts that can not be checked with HEAD requests, either because they reject the method
+ * or because they answer HEAD with an error while GET succeeds.
+ */
+class HeadRequestPolicy {
+
+  private final boolean enabled;
+  private final Map<String, Boolean> rejectedHosts = new ConcurrentHashMap<>();
+
+  HeadRequestPolicy(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  boolean isAllowed(String url) {
+    return enabled && Urls.origin(url).map(host -> !rejectedHosts.containsKey(host)).orElse(false);
+  }
+
+  void reject(String url) {
+    Urls.origin(url).ifPresent(host -> rejectedHosts.put(host, Boolean.TRUE));
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns hosts to the nodes of a cluster by consistent hashing. Every node is placed on the ring many times,
+ * so hosts are spread evenly, and adding or removing a node moves only the hosts of that node.
+ * A host always belongs to a single node, so per-host limits keep working in a cluster.
+ */
+class HostRing {
+
+  private static final int POINTS_PER_NODE = 128;
+
+  private final long[] points;
+  private final int[] owners;
+
+  /**
+   * @param nodes names of the nodes, the same on all of them, the position in the list is the node index
+   */
+  HostRing(List<String> nodes) {
+    long[][] ring = new long[nodes.size() * POINTS_PER_NODE][];
+    for (int node = 0; node < nodes.size(); node++) {
+      for (int i = 0; i < POINTS_PER_NODE; i++) {
+        ring[node * POINTS_PER_NODE + i] = new long[]{UrlFingerprintSet.fingerprint(nodes.get(node) + "#" + i), node};
+      }
+    }
+    Arrays.sort(ring, (a, b) -> Long.compare(a[0], b[0]));
+    points = new long[ring.length];
+    owners = new int[ring.length];
+    for (int i = 0; i < ring.length; i++) {
+      points[i] = ring[i][0];
+      owners[i] = (int) ring[i][1];
+    }
+  }
+
+  /**
+   * Returns the index of the node that owns the host of the URL.
+   */
+  int ownerOf(String url) {
+    long hash = UrlFingerprintSet.fingerprint(Urls.origin(url).orElse(""));
+    int i = Arrays.binarySearch(points, hash);
+    if (i < 0) {
+      i = -i - 1;
+    }
+    return owners[i == points.length ? 0 : i];
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Holds the URLs that are waiting to be fetched, grouped by host, and hands them out so that no host gets more
+ * concurrent requests or more requests per second than allowed. A host can also be paused, for example when it
+ * answers with Retry-After. Hosts that are ready are served round-robin, so a throttled host does not hold
+ * the others back. In the adaptive mode every host has a {@link ConcurrencyLimiter} of its own.
+ * <p>
+ * A host that fails to connect too many times in a row is considered down: its circuit opens, the URLs waiting
+ * for it are given back to be reported as unreachable, and new ones are refused. After a while a single probe
+ * request is let through, and every failed probe doubles the time till the next one.
+ */
+class HostScheduler {
+
+  private static final int MAX_RETRIES = 3;
+  private static final long RETRY_BACKOFF = 500;
+  private static final long PROBE_BACKOFF = 1000;
+  private static final long MAX_PROBE_BACKOFF = 60_000;
+
+  private final int maxConnectionsPerHost;
+  private final double requestsPerSecondPerHost;
+  private final int adaptiveLimit;
+  private final int failureThreshold;
+
+  private final Map<String, Host> hosts = new HashMap<>();
+  private final Deque<Host> ready = new ArrayDeque<>();
+  private final Queue<Host> delayed = new PriorityQueue<>(Comparator.comparingLong(h -> h.readyAt));
+  private final Map<String, Integer> retries = new HashMap<>();
+  // URLs that failed and wait for their next attempt, they do not hold their hosts back
+  private final Queue<Retry> retrying = new PriorityQueue<>(Comparator.comparingLong(r -> r.time));
+  private int pendingCount;
+
+  /**
+   * @param maxConnectionsPerHost the limit of requests in flight per host, 0 means no limit
+   * @param requestsPerSecondPerHost the limit of requests started per second per host, 0 means no limit
+   */
+  HostScheduler(int maxConnectionsPerHost, double requestsPerSecondPerHost) {
+    this(maxConnectionsPerHost, requestsPerSecondPerHost, 0, 0);
+  }
+
+  /**
+   * @param adaptiveLimit if above 0, the requests in flight per host are limited adaptively up to this number
+   *                      instead of maxConnectionsPerHost, the requests are reported with {@link #sample}
+   * @param failureThreshold the number of connection failures in a row that opens the circuit of a host,
+   *                         0 means that hosts are never considered down
+   */
+  HostScheduler(int maxConnectionsPerHost, double requestsPerSecondPerHost, int adaptiveLimit, int failureThreshold) {
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+    this.requestsPerSecondPerHost = requestsPerSecondPerHost;
+    this.adaptiveLimit = adaptiveLimit;
+    this.failureThreshold = failureThreshold;
+  }
+
+  /**
+   * Adds a URL to fetch.
+   *
+   * @return false if the host is down, then the URL is not added
+   */
+  synchronized boolean add(String url, long now) {
+    Host host = hostOf(url);
+    if (host.isDown(now)) {
+      return false;
+    }
+    if (host.downUntil > 0) {
+      // time to probe the host again
+      host.downUntil = 0;
+      host.probing = true;
+    }
+    host.pending.add(url);
+    pendingCount++;
+    schedule(host, now);
+    return true;
+  }
+
+  /**
+   * Returns the next URL that can be fetched right now, or null if all hosts with pending URLs are busy or throttled.
+   * The caller must report the end of the request with {@link #release(String, long)}.
+   */
+  synchronized String next(long now) {
+    while (!retrying.isEmpty() && retrying.peek().time <= now) {
+      Retry retry = retrying.poll();
+      Host host = hostOf(retry.url);
+      host.pending.addFirst(retry.url);
+      schedule(host, now);
+    }
+    while (!delayed.isEmpty() && delayed.peek().readyAt <= now) {
+      ready.add(delayed.poll());
+    }
+    Host host;
+    while ((host = ready.poll()) != null) {
+      host.queued = false;
+      if (host.pending.isEmpty() || host.isSaturated()) {
+        continue;
+      }
+      if (host.blockedUntil > now) {
+        delay(host, host.blockedUntil);
+        continue;
+      }
+      if (requestsPerSecondPerHost > 0) {
+        host.refill(now);
+        if (host.tokens < 1) {
+          delay(host, now + (long) Math.ceil((1 - host.tokens) * 1000 / requestsPerSecondPerHost));
+          continue;
+        }
+        host.tokens -= 1;
+      }
+      String url = host.pending.poll();
+      pendingCount--;
+      host.active++;
+      schedule(host, now);
+      return url;
+    }
+    return null;
+  }
+
+  /**
+   * Marks the end of a request that was handed out by {@link #next(long)}.
+   */
+  synchronized void release(String url, long now) {
+    Host host = hostOf(url);
+    host.active--;
+    schedule(host, now);
+  }
+
+  /**
+   * Adjusts the limit of the host in the adaptive mode, it takes effect when the request is released.
+   *
+   * @see ConcurrencyLimiter#onSample(long, boolean)
+   */
+  synchronized void sample(String url, long latencyNanos, boolean overloaded) {
+    ConcurrencyLimiter limiter = hostOf(url).limiter;
+    if (limiter != null) {
+      limiter.onSample(latencyNanos, overloaded);
+    }
+  }
+
+  /**
+   * Returns the current limits of requests in flight by host origin, empty unless in the adaptive mode.
+   */
+  synchronized Map<String, Integer> limits() {
+    Map<String, Integer> limits = new TreeMap<>();
+    hosts.forEach((origin, host) -> {
+      if (host.limiter != null) {
+        limits.put(origin, host.limiter.getLimit());
+      }
+    });
+    return limits;
+  }
+
+  /**
+   * Puts a URL back after the host asked to wait, the host gets no more requests until the given time.
+   *
+   * @return false if the URL has been retried too many times already and should not be fetched again
+   */
+  synchronized boolean retryAt(String url, long time, long now) {
+    Host host = hostOf(url);
+    if (host.isDown(now) || !countAttempt(url)) {
+      return false;
+    }
+    host.blockedUntil = Math.max(host.blockedUntil, time);
+    host.pending.addFirst(url);
+    pendingCount++;
+    schedule(host, now);
+    return true;
+  }
+
+  /**
+   * Puts a URL back after a transient failure, the attempts are spread with exponential backoff and jitter,
+   * and other URLs of the host are fetched meanwhile.
+   *
+   * @return false if the URL has been retried too many times already or the host is down
+   */
+  synchronized boolean retryWithBackoff(String url, long now) {
+    if (hostOf(url).isDown(now) || !countAttempt(url)) {
+      return false;
+    }
+    long backoff = RETRY_BACKOFF << (retries.get(url) - 1);
+    retrying.add(new Retry(url, now + backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1)));
+    pendingCount++;
+    return true;
+  }
+
+  /**
+   * Forgets the attempts of a URL that is done and is not going to be retried.
+   */
+  synchronized void finish(String url) {
+    retries.remove(url);
+  }
+
+  private boolean countAttempt(String url) {
+    int attempts = retries.merge(url, 1, Integer::sum);
+    if (attempts > MAX_RETRIES) {
+      retries.remove(url);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Tracks the health of the host, it takes effect when the request is released.
+   *
+   * @param connected false if the request failed to connect to the host or got no answer
+   * @return the URLs that were waiting for the host if its circuit has just opened, they are not fetched
+   */
+  synchronized List<String> recordOutcome(String url, boolean connected, long now) {
+    Host host = hostOf(url);
+    if (connected) {
+      host.failures = 0;
+      host.probing = false;
+      host.downUntil = 0;
+      host.probeBackoff = PROBE_BACKOFF;
+      return Collections.emptyList();
+    }
+    host.failures++;
+    if (failureThreshold <= 0 || host.isDown(now) || (!host.probing && host.failures < failureThreshold)) {
+      return Collections.emptyList();
+    }
+    host.probing = false;
+    host.downUntil = now + host.probeBackoff;
+    host.probeBackoff = Math.min(MAX_PROBE_BACKOFF, host.probeBackoff * 2);
+    List<String> dropped = new ArrayList<>(host.pending);
+    host.pending.clear();
+    retrying.removeIf(retry -> {
+      if (hostOf(retry.url) == host) {
+        dropped.add(retry.url);
+        return true;
+      }
+      return false;
+    });
+    pendingCount -= dropped.size();
+    dropped.forEach(retries::remove);
+    return dropped;
+  }
+
+  /**
+   * Returns the number of milliseconds until some host may become ready by time, or Long.MAX_VALUE
+   * if that depends only on requests in flight.
+   */
+  synchronized long nextDelay(long now) {
+    if (!ready.isEmpty()) {
+      return 0;
+    }
+    long readyAt = Long.MAX_VALUE;
+    if (!delayed.isEmpty()) {
+      readyAt = delayed.peek().readyAt;
+    }
+    if (!retrying.isEmpty()) {
+      readyAt = Math.min(readyAt, retrying.peek().time);
+    }
+    return readyAt == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, readyAt - now);
+  }
+
+  synchronized boolean isEmpty() {
+    return pendingCount == 0;
+  }
+
+  synchronized int size() {
+    return pendingCount;
+  }
+
+  private Host hostOf(String url) {
+    return hosts.computeIfAbsent(Urls.origin(url).orElse(""), k -> new Host());
+  }
+
+  private void schedule(Host host, long now) {
+    if (host.queued || host.pending.isEmpty() || host.isSaturated()) {
+      return;
+    }
+    if (host.blockedUntil > now) {
+      delay(host, host.blockedUntil);
+    } else {
+      host.queued = true;
+      ready.add(host);
+    }
+  }
+
+  private void delay(Host host, long until) {
+    host.readyAt = until;
+    host.queued = true;
+    delayed.add(host);
+  }
+
+  private class Host {
+    private final Deque<String> pending = new ArrayDeque<>();
+    private final ConcurrencyLimiter limiter = adaptiveLimit > 0 ? new ConcurrencyLimiter(2, adaptiveLimit) : null;
+    private int active;
+    private boolean queued;
+    private long readyAt;
+    private long blockedUntil;
+    // connection failures in a row, the circuit is open till downUntil, and then a single probe is let through
+    private int failures;
+    private long downUntil;
+    private long probeBackoff = PROBE_BACKOFF;
+    private boolean probing;
+    private double tokens = Math.max(1, requestsPerSecondPerHost);
+    private long refilledAt = -1;
+
+    boolean isSaturated() {
+      if (probing) {
+        return active >= 1;
+      }
+      if (limiter != null) {
+        return active >= limiter.getLimit();
+      }
+      return maxConnectionsPerHost > 0 && active >= maxConnectionsPerHost;
+    }
+
+    boolean isDown(long now) {
+      return downUntil > now;
+    }
+
+    // token bucket that holds up to one second worth of requests
+    void refill(long now) {
+      if (refilledAt >= 0) {
+        tokens = Math.min(Math.max(1, requestsPerSecondPerHost), tokens + (now - refilledAt) * requestsPerSecondPerHost / 1000);
+      }
+      refilledAt = now;
+    }
+  }
+
+  private static class Retry {
+    private final String url;
+    private final long time;
+
+    Retry(String url, long time) {
+      this.url = url;
+      this.time = time;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Sends requests on behalf of scan workers. A blocking implementation completes the future before returning,
+ * an asynchronous one completes it later on its own threads.
+ */
+public interface HttpTransport extends Closeable {
+
+  /**
+   * Sends a GET request.
+   *
+   * @param url the URL to fetch
+   * @param headers additional request headers
+   * @param readBody decides by the response headers whether the body is going to be read,
+   *                 transports that have to buffer the body may skip downloading it otherwise
+   * @return the response, it must be closed by the caller
+   */
+  CompletableFuture<FetchResponse> fetch(String url, Map<String, String> headers, Predicate<FetchResponse> readBody);
+
+  default CompletableFuture<FetchResponse> fetch(String url, Predicate<FetchResponse> readBody) {
+    return fetch(url, Collections.emptyMap(), readBody);
+  }
+
+  /**
+   * Sends a HEAD request.
+   *
+   * @param url the URL to check
+   * @return the response, it must be closed by the caller
+   */
+  CompletableFuture<FetchResponse> head(String url);
+
+  /**
+   * Starts resolving the host of the URL ahead of its first request, transports that leave name resolution
+   * to the JDK ignore it.
+   */
+  default void prefetch(String url) {
+  }
+
+}
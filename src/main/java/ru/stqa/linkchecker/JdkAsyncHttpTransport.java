@@ -0,0 +1,227 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Non-blocking transport based on the JDK HTTP client. A single selector thread drives all connections,
+ * completion callbacks run on the client executor. Bodies that are going to be read are buffered in memory,
+ * the other ones are not downloaded at all. The client has no idle timeout for reading, so the socket timeout
+ * does not apply, the request deadline covers slow bodies. The client does not expose connection setup either,
+ * so only the time to the first byte and the download are measured.
+ */
+class JdkAsyncHttpTransport implements HttpTransport {
+
+  private final HttpClient httpclient;
+  private final ScanMetrics metrics;
+  private final int requestTimeout;
+  private final ScheduledThreadPoolExecutor deadlines = new ScheduledThreadPoolExecutor(1, r -> {
+    Thread thread = new Thread(r, "request-deadlines");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  JdkAsyncHttpTransport(ScanSettings settings, ScanMetrics metrics) {
+    this.metrics = metrics;
+    HttpClient.Builder builder = HttpClient.newBuilder()
+      .followRedirects(HttpClient.Redirect.NORMAL)
+      .cookieHandler(new CookieManager());
+    if (settings.getConnectTimeout() > 0) {
+      builder.connectTimeout(Duration.ofMillis(settings.getConnectTimeout()));
+    }
+    httpclient = builder.build();
+    requestTimeout = settings.getRequestTimeout();
+    // most requests complete in time, their deadlines should not pile up in the queue
+    deadlines.setRemoveOnCancelPolicy(true);
+  }
+
+  @Override
+  public CompletableFuture<FetchResponse> fetch(String url, Map<String, String> headers, Predicate<FetchResponse> readBody) {
+    try {
+      HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).GET();
+      headers.forEach(builder::header);
+      HttpRequest request = builder.build();
+      long start = System.nanoTime();
+      long[] headersReceived = new long[1];
+      return withDeadline(httpclient.sendAsync(request, info -> {
+        headersReceived[0] = System.nanoTime();
+        metrics.record(FetchPhase.FIRST_BYTE, headersReceived[0] - start);
+        if (readBody.test(new JdkFetchResponse(info.statusCode(), info.headers(), null))) {
+          return HttpResponse.BodySubscribers.ofByteArray();
+        }
+        return new SkippingSubscriber();
+      })).thenApply(response -> {
+        if (response.body() != null) {
+          metrics.record(FetchPhase.DOWNLOAD, System.nanoTime() - headersReceived[0]);
+          metrics.addBytesDownloaded(response.body().length);
+        }
+        return new JdkFetchResponse(response.statusCode(), response.headers(), response.body());
+      });
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  @Override
+  public CompletableFuture<FetchResponse> head(String url) {
+    try {
+      HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+        .method("HEAD", HttpRequest.BodyPublishers.noBody())
+        .build();
+      long start = System.nanoTime();
+      return withDeadline(httpclient.sendAsync(request, HttpResponse.BodyHandlers.discarding()))
+        .thenApply(response -> {
+          metrics.record(FetchPhase.FIRST_BYTE, System.nanoTime() - start);
+          return new JdkFetchResponse(response.statusCode(), response.headers(), null);
+        });
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  // the timeout of the request itself only covers waiting for the headers, this one also covers the body
+  private <T> CompletableFuture<T> withDeadline(CompletableFuture<T> sent) {
+    if (requestTimeout <= 0) {
+      return sent;
+    }
+    CompletableFuture<T> result = new CompletableFuture<>();
+    ScheduledFuture<?> deadline = deadlines.schedule(() -> {
+      if (result.completeExceptionally(
+        new HttpTimeoutException(String.format("Request is not complete in %s ms", requestTimeout)))) {
+        // newer JDKs abort the exchange on cancel, older ones let it finish in the background
+        sent.cancel(true);
+      }
+    }, requestTimeout, TimeUnit.MILLISECONDS);
+    sent.whenComplete((response, e) -> {
+      deadline.cancel(false);
+      if (e != null) {
+        result.completeExceptionally(e);
+      } else {
+        result.complete(response);
+      }
+    });
+    return result;
+  }
+
+  @Override
+  public void close() {
+    deadlines.shutdownNow();
+  }
+
+  private static class JdkFetchResponse implements FetchResponse {
+
+    private final int statusCode;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    JdkFetchResponse(int statusCode, HttpHeaders headers, byte[] body) {
+      this.statusCode = statusCode;
+      this.headers = headers;
+      this.body = body;
+    }
+
+    @Override
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    @Override
+    public List<String> getHeaders(String name) {
+      return headers.allValues(name);
+    }
+
+    @Override
+    public Reader getBodyReader() throws IOException {
+      if (body == null) {
+        throw new IOException("Response body has not been read");
+      }
+      return new InputStreamReader(new ByteArrayInputStream(body), charset());
+    }
+
+    private Charset charset() {
+      Optional<String> charset = headers.firstValue("Content-Type").flatMap(type -> {
+        for (String param : type.split(";")) {
+          String trimmed = param.trim();
+          if (trimmed.toLowerCase().startsWith("charset=")) {
+            return Optional.of(trimmed.substring("charset=".length()).replace("\"", ""));
+          }
+        }
+        return Optional.empty();
+      });
+      try {
+        return charset.map(Charset::forName).orElse(StandardCharsets.ISO_8859_1);
+      } catch (IllegalArgumentException e) {
+        return StandardCharsets.ISO_8859_1;
+      }
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  // cancels the subscription right away, so the client drops the connection instead of downloading the body
+  private static class SkippingSubscriber implements HttpResponse.BodySubscriber<byte[]> {
+
+    @Override
+    public CompletionStage<byte[]> getBody() {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      subscription.cancel();
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onComplete() {
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Builds a DOM with Jsoup and selects the elements that can refer to other resources.
+ */
+class JsoupLinkExtractor implements LinkExtractor {
+
+  @Override
+  public Set<String> extract(Reader page, String pageUrl) throws IOException {
+    StringWriter text = new StringWriter();
+    page.transferTo(text);
+    return getLinks(text.toString(), pageUrl);
+  }
+
+  Set<String> getLinks(String text, String baseUrl) {
+    Document doc = Jsoup.parse(text, baseUrl);
+    Set<String> result = new HashSet<>();
+    for (Element e : doc.select("a, area, link")) {
+      addLink(result, e, "abs:href");
+    }
+    for (Element e : doc.select("img, iframe, audio, embed, video, source, track, script, input")) {
+      addLink(result, e, "abs:src");
+    }
+    for (Element e : doc.select("video")) {
+      addLink(result, e, "abs:poster");
+    }
+    for (Element e : doc.select("object")) {
+      addLink(result, e, "abs:data");
+    }
+    for (Element e : doc.select("source")) {
+      addLink(result, e, "abs:srcset");
+    }
+    for (Element e : doc.select("form")) {
+      addLink(result, e, "abs:action");
+    }
+    for (Element e : doc.select("input, button")) {
+      addLink(result, e, "abs:formaction");
+    }
+    return result;
+  }
+
+  private void addLink(Set<String> result, Element e, String attrName) {
+    Optional.of(e.attr(attrName)).filter(attr -> attr.length() > 0).ifPresent(result::add);
+  }
+}
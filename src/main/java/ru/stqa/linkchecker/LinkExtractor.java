@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Set;
+
+public interface LinkExtractor {
+
+  /**
+   * Extracts absolute URLs of all the resources a page refers to.
+   *
+   * @param page the page source
+   * @param pageUrl the page URL used to resolve relative links, unless the page declares its own base
+   */
+  Set<String> extract(Reader page, String pageUrl) throws IOException;
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Links between the pages of a scan. URLs are interned into a {@link UrlDictionary}, the outgoing links
+ * of a page are kept as a sorted array of target ids and the incoming links of a URL as an array of referrer ids,
+ * so both the links of a page and the pages linking to a URL are found without looking through the whole site.
+ */
+class LinkGraph {
+
+  private static final int[] NO_LINKS = new int[0];
+
+  private final UrlDictionary urls = new UrlDictionary();
+  private int[][] forward = new int[1024][];
+  private int[][] reverse = new int[1024][];
+  private int[] reverseSizes = new int[1024];
+
+  /**
+   * Replaces the outgoing links of a page.
+   *
+   * @return a read-only view of the links that is backed by the dictionary
+   */
+  synchronized Set<String> setLinks(String page, Set<String> links) {
+    int pageId = links.isEmpty() ? urls.idOf(page) : urls.intern(page);
+    if (pageId < 0) {
+      return Collections.emptySet();
+    }
+    int[] targets = new int[links.size()];
+    int count = 0;
+    for (String link : links) {
+      targets[count++] = urls.intern(link);
+    }
+    Arrays.sort(targets, 0, count);
+    targets = dedup(targets, count);
+
+    ensureCapacity(urls.size());
+    int[] old = forward[pageId];
+    if (old != null) {
+      for (int target : old) {
+        removeReferrer(target, pageId);
+      }
+    }
+    for (int target : targets) {
+      addReferrer(target, pageId);
+    }
+    forward[pageId] = targets.length == 0 ? null : targets;
+    return targets.length == 0 ? Collections.emptySet() : new LinkSet(targets);
+  }
+
+  /**
+   * Returns the pages that link to the URL, ordered by the time their URLs were first seen.
+   */
+  synchronized Set<String> referrers(String url) {
+    int id = urls.idOf(url);
+    if (id < 0 || id >= reverse.length || reverseSizes[id] == 0) {
+      return Collections.emptySet();
+    }
+    int[] referrers = Arrays.copyOf(reverse[id], reverseSizes[id]);
+    Arrays.sort(referrers);
+    return new LinkSet(referrers);
+  }
+
+  private void addReferrer(int target, int referrer) {
+    int[] list = reverse[target];
+    int size = reverseSizes[target];
+    if (list == null) {
+      list = reverse[target] = new int[2];
+    } else if (size == list.length) {
+      list = reverse[target] = Arrays.copyOf(list, size + (size >> 1) + 1);
+    }
+    list[size] = referrer;
+    reverseSizes[target] = size + 1;
+  }
+
+  private void removeReferrer(int target, int referrer) {
+    int[] list = reverse[target];
+    int size = reverseSizes[target];
+    for (int i = 0; i < size; i++) {
+      if (list[i] == referrer) {
+        System.arraycopy(list, i + 1, list, i, size - i - 1);
+        reverseSizes[target] = size - 1;
+        return;
+      }
+    }
+  }
+
+  private void ensureCapacity(int size) {
+    if (size > forward.length) {
+      int capacity = Math.max(size, forward.length * 2);
+      forward = Arrays.copyOf(forward, capacity);
+      reverse = Arrays.copyOf(reverse, capacity);
+      reverseSizes = Arrays.copyOf(reverseSizes, capacity);
+    }
+  }
+
+  private static int[] dedup(int[] sorted, int count) {
+    if (count == 0) {
+      return NO_LINKS;
+    }
+    int unique = 1;
+    for (int i = 1; i < count; i++) {
+      if (sorted[i] != sorted[unique - 1]) {
+        sorted[unique++] = sorted[i];
+      }
+    }
+    return unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+  }
+
+  /**
+   * A set of URLs stored as sorted ids.
+   */
+  private class LinkSet extends AbstractSet<String> {
+
+    private final int[] ids;
+
+    LinkSet(int[] ids) {
+      this.ids = ids;
+    }
+
+    @Override
+    public int size() {
+      return ids.length;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      int id = o instanceof String ? urls.idOf(o) : -1;
+      return id >= 0 && Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return new Iterator<String>() {
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+          return next < ids.length;
+        }
+
+        @Override
+        public String next() {
+          if (next >= ids.length) {
+            throw new NoSuchElementException();
+          }
+          return urls.url(ids[next++]);
+        }
+      };
+    }
+  }
+}
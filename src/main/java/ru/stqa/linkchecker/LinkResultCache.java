@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of checking links that are not scanned, usually external ones, keyed by canonical URL.
+ * Sessions that share the cache check a link that many sites refer to only once, and a cache saved to a file
+ * lets the next scan skip links that were checked recently. Working links are trusted longer than broken ones,
+ * and when the cache is full the least recently used results are dropped.
+ */
+class LinkResultCache {
+
+  private static final int VERSION = 1;
+
+  private final long successTtl;
+  private final long errorTtl;
+  private final int maxEntries;
+  // in the order of access, the eldest entry goes first when the cache is full
+  private final LinkedHashMap<String, Result> entries;
+
+  LinkResultCache(ScanSettings settings) {
+    this(settings.getLinkCacheSuccessTtl(), settings.getLinkCacheErrorTtl(), settings.getLinkCacheSize());
+  }
+
+  /**
+   * @param successTtl how long a link that answered with a status below 400 is not checked again, in milliseconds
+   * @param errorTtl how long a broken link is not checked again, in milliseconds
+   * @param maxEntries the number of results to keep
+   */
+  LinkResultCache(long successTtl, long errorTtl, int maxEntries) {
+    this.successTtl = successTtl;
+    this.errorTtl = errorTtl;
+    this.maxEntries = maxEntries;
+    this.entries = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+        return size() > LinkResultCache.this.maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Loads results saved by a previous scan, an absent file gives an empty cache.
+   */
+  static LinkResultCache load(Path file, ScanSettings settings) throws IOException {
+    LinkResultCache cache = new LinkResultCache(settings);
+    if (!Files.exists(file)) {
+      return cache;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != VERSION) {
+        return cache;
+      }
+      int count = in.readInt();
+      long now = System.currentTimeMillis();
+      for (int i = 0; i < count; i++) {
+        String url = BinaryStrings.read(in);
+        Result result = new Result(ScanStatus.values()[in.readByte()], in.readInt(), BinaryStrings.read(in),
+          BinaryStrings.read(in), in.readLong());
+        if (!cache.isExpired(result, now)) {
+          cache.entries.put(url, result);
+        }
+      }
+    }
+    return cache;
+  }
+
+  PageInfo get(String url) {
+    return get(url, System.currentTimeMillis());
+  }
+
+  /**
+   * Returns the cached result for the URL, or null if the link was not checked yet or the result is too old.
+   */
+  synchronized PageInfo get(String url, long now) {
+    Result result = entries.get(url);
+    if (result == null) {
+      return null;
+    }
+    if (isExpired(result, now)) {
+      entries.remove(url);
+      return null;
+    }
+    return result.toPageInfo(url);
+  }
+
+  void put(PageInfo pageInfo) {
+    put(pageInfo, System.currentTimeMillis());
+  }
+
+  synchronized void put(PageInfo pageInfo, long now) {
+    if (pageInfo.getStatus() != ScanStatus.IN_PROGRESS) {
+      entries.put(pageInfo.getUrl(), new Result(pageInfo.getStatus(), pageInfo.getHttpStatus(),
+        pageInfo.getContentType(), pageInfo.getMessage(), now));
+    }
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Saves the results that are still fresh, replacing the file atomically. The least recently used results
+   * are written first, so they are the first to go after the next load too.
+   */
+  synchronized void save(Path file) throws IOException {
+    long now = System.currentTimeMillis();
+    entries.values().removeIf(result -> isExpired(result, now));
+    Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      out.writeInt(VERSION);
+      out.writeInt(entries.size());
+      for (Map.Entry<String, Result> e : entries.entrySet()) {
+        Result result = e.getValue();
+        BinaryStrings.write(out, e.getKey());
+        out.writeByte(result.status.ordinal());
+        out.writeInt(result.httpStatus);
+        BinaryStrings.write(out, result.contentType);
+        BinaryStrings.write(out, result.message);
+        out.writeLong(result.checkedAt);
+      }
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private boolean isExpired(Result result, long now) {
+    boolean working = result.status == ScanStatus.DONE && result.httpStatus < 400;
+    return now - result.checkedAt >= (working ? successTtl : errorTtl);
+  }
+
+  // keeps just the outcome of a check, a page info belongs to the results of a single session
+  private static class Result {
+
+    private final ScanStatus status;
+    private final int httpStatus;
+    private final String contentType;
+    private final String message;
+    private final long checkedAt;
+
+    Result(ScanStatus status, int httpStatus, String contentType, String message, long checkedAt) {
+      this.status = status;
+      this.httpStatus = httpStatus;
+      this.contentType = contentType;
+      this.message = message;
+      this.checkedAt = checkedAt;
+    }
+
+    PageInfo toPageInfo(String url) {
+      PageInfo.Builder builder = status == ScanStatus.DONE ? PageInfo.done(url) : PageInfo.broken(url);
+      return builder.httpStatus(httpStatus).contentType(contentType).message(message).build();
+    }
+  }
+}
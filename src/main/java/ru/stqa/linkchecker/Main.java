@@ -18,34 +18,242 @@ package ru.stqa.linkchecker;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class Main {
 
   private static class CliOptions {
-    @Parameter(names = "-target", arity = 1, required = true)
+    @Parameter(names = "-target", arity = 1)
     String target;
 
+    @Parameter(names = "-targets", arity = 1)
+    String targets;
+
+    @Parameter(names = "-parallelTargets", arity = 1)
+    int parallelTargets = 4;
+
+    @Parameter(names = "-requestBudget", arity = 1)
+    int requestBudget = 50;
+
+    @Parameter(names = "-reportDir", arity = 1)
+    String reportDir = "reports";
+
     @Parameter(names = "-report", arity = 1)
     String report = "report.html";
 
     @Parameter(names = "-threads", arity = 1)
     int threadCount = 10;
+
+    @Parameter(names = "-virtualThreads")
+    boolean virtualThreads = false;
+
+    @Parameter(names = "-transport", arity = 1)
+    TransportType transport = TransportType.BLOCKING;
+
+    @Parameter(names = "-head", arity = 1)
+    boolean head = true;
+
+    @Parameter(names = "-hostConnections", arity = 1)
+    int maxConnectionsPerHost = 0;
+
+    @Parameter(names = "-hostRate", arity = 1)
+    double requestsPerSecondPerHost = 0;
+
+    @Parameter(names = "-adaptive")
+    boolean adaptiveConcurrency = false;
+
+    @Parameter(names = "-hostFailures", arity = 1)
+    int hostFailureThreshold = 5;
+
+    @Parameter(names = "-journal", arity = 1)
+    String journal;
+
+    @Parameter(names = "-resume")
+    boolean resume = false;
+
+    @Parameter(names = "-validators", arity = 1)
+    String validatorStore;
+
+    @Parameter(names = "-connectTimeout", arity = 1)
+    int connectTimeout = 10;
+
+    @Parameter(names = "-socketTimeout", arity = 1)
+    int socketTimeout = 30;
+
+    @Parameter(names = "-requestTimeout", arity = 1)
+    int requestTimeout = 60;
+
+    @Parameter(names = "-scanTimeout", arity = 1)
+    long scanTimeout = 0;
+
+    @Parameter(names = "-stripFragments", arity = 1)
+    boolean stripFragments = true;
+
+    @Parameter(names = "-sortQuery")
+    boolean sortQueryParameters = false;
+
+    @Parameter(names = "-ignoreQueryParams")
+    List<String> ignoredQueryParameters = new ArrayList<>();
+
+    @Parameter(names = "-caseInsensitiveHosts")
+    List<String> caseInsensitiveHosts = new ArrayList<>();
+
+    @Parameter(names = "-linkCache", arity = 1)
+    String linkCache;
+
+    @Parameter(names = "-linkCacheSuccessTtl", arity = 1)
+    long linkCacheSuccessTtl = 7 * 24 * 60 * 60;
+
+    @Parameter(names = "-linkCacheErrorTtl", arity = 1)
+    long linkCacheErrorTtl = 60 * 60;
+
+    @Parameter(names = "-linkCacheSize", arity = 1)
+    int linkCacheSize = 100_000;
+
+    @Parameter(names = "-dnsTtl", arity = 1)
+    long dnsCacheTtl = 5 * 60;
+
+    @Parameter(names = "-dnsNegativeTtl", arity = 1)
+    long dnsNegativeCacheTtl = 60;
+
+    @Parameter(names = "-nodes")
+    List<String> nodes = new ArrayList<>();
+
+    @Parameter(names = "-node", arity = 1)
+    int node = 0;
   }
 
   public static void main(String[] args) throws Exception {
     CliOptions options = new CliOptions();
     JCommander.newBuilder().addObject(options).args(args).build();
+    if (options.resume && options.journal == null) {
+      throw new ParameterException("-resume requires -journal");
+    }
+    if (!options.nodes.isEmpty() && (options.node < 0 || options.node >= options.nodes.size())) {
+      throw new ParameterException("-node must be an index in the -nodes list");
+    }
+    if ((options.target == null) == (options.targets == null)) {
+      throw new ParameterException("Either -target or -targets is required");
+    }
+    if (options.targets != null) {
+      if (options.journal != null || options.validatorStore != null || !options.nodes.isEmpty()) {
+        throw new ParameterException("-targets can not be used with -journal, -validators or -nodes");
+      }
+      runBatch(options);
+      return;
+    }
 
-    ScanSession session = new ScanSession(new ScanSettings(options.target, options.threadCount));
+    ScanSettings settings = settings(options, options.target, options.threadCount);
+    ScanSession session = new ScanSession(settings);
     session.addListener(pageInfo -> {
       if (pageInfo.getStatus() != ScanStatus.IN_PROGRESS) {
         System.out.print(".");
       }
     });
+    ClusterNode cluster = null;
+    if (!options.nodes.isEmpty()) {
+      cluster = new ClusterNode(session,
+        options.nodes.stream().map(ClusterNode::address).collect(Collectors.toList()), options.node);
+      cluster.start();
+    }
     Thread t = new Thread(session);
     t.start();
+    if (cluster != null && !cluster.isCoordinator()) {
+      // the coordinator takes the results of this node and writes the report
+      cluster.awaitStop();
+      t.join();
+      cluster.close();
+      return;
+    }
+    if (cluster != null) {
+      try {
+        cluster.awaitCompletion();
+      } catch (IOException e) {
+        // no report is written for an incomplete scan
+        session.interrupt();
+        t.join();
+        cluster.close();
+        throw e;
+      }
+    }
     t.join();
+    if (cluster != null) {
+      cluster.close();
+    }
 
     new ScanReport(session.getResults()).saveTo(options.report);
+    System.out.println();
+    session.getMetrics().print(System.out);
+  }
+
+  private static ScanSettings settings(CliOptions options, String target, int threadCount) throws MalformedURLException {
+    return new ScanSettings(target, threadCount)
+      .virtualThreads(options.virtualThreads)
+      .transportType(options.transport)
+      .headRequests(options.head)
+      .maxConnectionsPerHost(options.maxConnectionsPerHost)
+      .adaptiveConcurrency(options.adaptiveConcurrency)
+      .hostFailureThreshold(options.hostFailureThreshold)
+      .requestsPerSecondPerHost(options.requestsPerSecondPerHost)
+      .journal(options.journal)
+      .resume(options.resume)
+      .validatorStore(options.validatorStore)
+      .connectTimeout(options.connectTimeout * 1000)
+      .socketTimeout(options.socketTimeout * 1000)
+      .requestTimeout(options.requestTimeout * 1000)
+      .scanTimeout(options.scanTimeout * 1000)
+      .stripFragments(options.stripFragments)
+      .sortQueryParameters(options.sortQueryParameters)
+      .ignoredQueryParameters(options.ignoredQueryParameters)
+      .caseInsensitiveHosts(options.caseInsensitiveHosts)
+      .linkCache(options.linkCache)
+      .linkCacheSuccessTtl(options.linkCacheSuccessTtl * 1000)
+      .linkCacheErrorTtl(options.linkCacheErrorTtl * 1000)
+      .linkCacheSize(options.linkCacheSize)
+      .dnsCacheTtl(options.dnsCacheTtl * 1000)
+      .dnsNegativeCacheTtl(options.dnsNegativeCacheTtl * 1000);
+  }
+
+  private static void runBatch(CliOptions options) throws Exception {
+    List<String> urls;
+    try (Reader in = options.targets.equals("-")
+      ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+      : Files.newBufferedReader(Paths.get(options.targets), StandardCharsets.UTF_8)) {
+      urls = BatchScan.readTargets(in);
+    }
+    if (urls.isEmpty()) {
+      return;
+    }
+    List<ScanSettings> targets = new ArrayList<>();
+    for (String url : urls) {
+      targets.add(settings(options, url, options.threadCount));
+    }
+    Path reportDir = Files.createDirectories(Paths.get(options.reportDir));
+
+    try (SharedScanResources shared = new SharedScanResources(settings(options, urls.get(0), options.requestBudget))) {
+      new BatchScan(targets, shared, options.parallelTargets).run((index, session) -> {
+        Path report = reportDir.resolve(BatchScan.reportName(index, urls.get(index)));
+        try {
+          new ScanReport(session.getResults()).saveTo(report.toString());
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        System.out.println(report + " " + urls.get(index));
+      });
+      shared.getMetrics().print(System.out);
+    }
   }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.DefaultHttpClientConnectionOperator;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Establishes connections for the Apache client and times the phases of it: resolving the host name,
+ * connecting and the TLS handshake. The time of the whole setup is left in the request context, so that
+ * the transport can tell the time to the first byte apart, a request without it went over a reused connection.
+ */
+class MeteredConnectionOperator extends DefaultHttpClientConnectionOperator {
+
+  static final String SETUP_NANOS = "ru.stqa.linkchecker.setup-nanos";
+  private static final String TLS_NANOS = "ru.stqa.linkchecker.tls-nanos";
+
+  private final ScanMetrics metrics;
+
+  private MeteredConnectionOperator(Registry<ConnectionSocketFactory> sockets, DnsResolver dnsResolver,
+                                    ScanMetrics metrics) {
+    super(sockets, null, dnsResolver);
+    this.metrics = metrics;
+  }
+
+  static MeteredConnectionOperator create(ScanMetrics metrics, DnsResolver resolver) {
+    Registry<ConnectionSocketFactory> sockets = RegistryBuilder.<ConnectionSocketFactory>create()
+      .register("http", new PlainSocketFactory(metrics))
+      .register("https", new SslSocketFactory(metrics))
+      .build();
+    DnsResolver dnsResolver = host -> {
+      long start = System.nanoTime();
+      try {
+        return resolver.resolve(host);
+      } finally {
+        metrics.record(FetchPhase.DNS, System.nanoTime() - start);
+      }
+    };
+    return new MeteredConnectionOperator(sockets, dnsResolver, metrics);
+  }
+
+  @Override
+  public void connect(ManagedHttpClientConnection conn, HttpHost host, InetSocketAddress localAddress,
+                      int connectTimeout, SocketConfig socketConfig, HttpContext context) throws IOException {
+    long start = System.nanoTime();
+    super.connect(conn, host, localAddress, connectTimeout, socketConfig, context);
+    context.setAttribute(SETUP_NANOS, System.nanoTime() - start);
+    metrics.connectionOpened();
+  }
+
+  private static class PlainSocketFactory extends PlainConnectionSocketFactory {
+
+    private final ScanMetrics metrics;
+
+    PlainSocketFactory(ScanMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    @Override
+    public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                InetSocketAddress localAddress, HttpContext context) throws IOException {
+      long start = System.nanoTime();
+      Socket connected = super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+      metrics.record(FetchPhase.CONNECT, System.nanoTime() - start);
+      return connected;
+    }
+  }
+
+  // the factory connects and then calls createLayeredSocket for the handshake, so the handshake time is passed
+  // through the context to take it out of the connect time
+  private static class SslSocketFactory extends SSLConnectionSocketFactory {
+
+    private final ScanMetrics metrics;
+
+    SslSocketFactory(ScanMetrics metrics) {
+      super(SSLContexts.createDefault(), getDefaultHostnameVerifier());
+      this.metrics = metrics;
+    }
+
+    @Override
+    public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                InetSocketAddress localAddress, HttpContext context) throws IOException {
+      context.removeAttribute(TLS_NANOS);
+      long start = System.nanoTime();
+      Socket connected = super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+      Object tls = context.getAttribute(TLS_NANOS);
+      metrics.record(FetchPhase.CONNECT, System.nanoTime() - start - (tls instanceof Long ? (Long) tls : 0));
+      return connected;
+    }
+
+    @Override
+    public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+      long start = System.nanoTime();
+      Socket layered = super.createLayeredSocket(socket, target, port, context);
+      long tls = System.nanoTime() - start;
+      metrics.record(FetchPhase.TLS, tls);
+      context.setAttribute(TLS_NANOS, tls);
+      return layered;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+/**
+ * What a scan listener does when it falls behind and its buffer of undelivered events is full.
+ */
+public enum OverflowPolicy {
+  /** the scan waits until the listener takes some events */
+  BLOCK,
+  /** a new event for a URL replaces the undelivered one for the same URL, the scan waits only if there is none */
+  COALESCE,
+  /** events of pages that are still in progress are dropped, the scan waits only if there are none */
+  DROP_PROGRESS
+}
@@ -17,7 +17,6 @@
 package ru.stqa.linkchecker;
 
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
 
 import static ru.stqa.linkchecker.ScanStatus.*;
@@ -30,7 +29,8 @@ public class PageInfo {
 
   private int httpStatus;
   private String contentType;
-  private Set<String> links = new HashSet<>();
+  private Set<String> links = Collections.emptySet();
+  private Set<String> anchors = Collections.emptySet();
 
   private PageInfo(String url, ScanStatus status) {
     this.url = url;
@@ -78,8 +78,20 @@ public class PageInfo {
       return this;
     }
 
+    /**
+     * Sets the links found on the page. The set is not copied, it is replaced with a compact view
+     * when the page is added to {@link ScanResults}.
+     */
     public Builder links(Set<String> links) {
-      PageInfo.this.links = Collections.unmodifiableSet(new HashSet<>(links));
+      PageInfo.this.links = Collections.unmodifiableSet(links);
+      return this;
+    }
+
+    /**
+     * Sets the links that point to a fragment of a page, with the fragment kept.
+     */
+    public Builder anchors(Set<String> anchors) {
+      PageInfo.this.anchors = Collections.unmodifiableSet(anchors);
       return this;
     }
 
@@ -103,4 +115,12 @@ public class PageInfo {
   public Set<String> getLinks() {
     return links;
   }
+
+  public Set<String> getAnchors() {
+    return anchors;
+  }
+
+  void internLinks(LinkGraph graph) {
+    links = graph.setLinks(url, links);
+  }
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Delivers page events of a scan to the listeners. Every listener has a bounded ring buffer and a thread of its own
+ * that takes all the events collected so far as a batch, so a slow listener delays neither the workers nor the other
+ * listeners until its buffer is full, and what happens then is up to its {@link OverflowPolicy}.
+ */
+class ScanEventBus {
+
+  private static final AtomicInteger threadCounter = new AtomicInteger();
+
+  private final int capacity;
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+  /**
+   * @param capacity the number of undelivered events a listener may have
+   */
+  ScanEventBus(int capacity) {
+    this.capacity = capacity;
+  }
+
+  void subscribe(Consumer<List<PageInfo>> listener, OverflowPolicy policy) {
+    Subscriber subscriber = new Subscriber(listener, policy);
+    subscribers.add(subscriber);
+    subscriber.thread.start();
+  }
+
+  void publish(PageInfo pageInfo) {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.offer(pageInfo);
+    }
+  }
+
+  /**
+   * Returns the number of events the listeners have not got because of {@link OverflowPolicy#DROP_PROGRESS}.
+   */
+  int getDropped() {
+    return subscribers.stream().mapToInt(subscriber -> subscriber.dropped).sum();
+  }
+
+  /**
+   * Waits until the listeners get all the events published so far and stops their threads.
+   */
+  void close() throws InterruptedException {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.close();
+    }
+    for (Subscriber subscriber : subscribers) {
+      subscriber.thread.join();
+    }
+  }
+
+  private class Subscriber implements Runnable {
+
+    private final Consumer<List<PageInfo>> listener;
+    private final OverflowPolicy policy;
+    private final Thread thread;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // the events from head to head + count, wrapping around the end of the array
+    private final PageInfo[] ring = new PageInfo[capacity];
+    private int head;
+    private int count;
+    private boolean closed;
+    private volatile int dropped;
+
+    Subscriber(Consumer<List<PageInfo>> listener, OverflowPolicy policy) {
+      this.listener = listener;
+      this.policy = policy;
+      this.thread = new Thread(this, "scan-listener-" + threadCounter.incrementAndGet());
+      this.thread.setDaemon(true);
+    }
+
+    void offer(PageInfo pageInfo) {
+      lock.lock();
+      try {
+        while (count == ring.length) {
+          if (policy == OverflowPolicy.COALESCE && replace(pageInfo)) {
+            return;
+          }
+          if (policy == OverflowPolicy.DROP_PROGRESS) {
+            if (pageInfo.getStatus() == ScanStatus.IN_PROGRESS) {
+              dropped++;
+              return;
+            }
+            if (removeInProgress()) {
+              dropped++;
+              break;
+            }
+          }
+          notFull.awaitUninterruptibly();
+        }
+        ring[(head + count) % ring.length] = pageInfo;
+        count++;
+        notEmpty.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    // puts the event in place of an undelivered one for the same URL
+    private boolean replace(PageInfo pageInfo) {
+      for (int i = 0; i < count; i++) {
+        int index = (head + i) % ring.length;
+        if (ring[index].getUrl().equals(pageInfo.getUrl())) {
+          ring[index] = pageInfo;
+          return true;
+        }
+      }
+      return false;
+    }
+
+    // removes the oldest undelivered event of a page in progress, the events after it move one slot back
+    private boolean removeInProgress() {
+      for (int i = 0; i < count; i++) {
+        if (ring[(head + i) % ring.length].getStatus() == ScanStatus.IN_PROGRESS) {
+          for (int j = i; j < count - 1; j++) {
+            ring[(head + j) % ring.length] = ring[(head + j + 1) % ring.length];
+          }
+          count--;
+          ring[(head + count) % ring.length] = null;
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void close() {
+      lock.lock();
+      try {
+        closed = true;
+        notEmpty.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        List<PageInfo> batch;
+        lock.lock();
+        try {
+          while (count == 0 && !closed) {
+            notEmpty.awaitUninterruptibly();
+          }
+          if (count == 0) {
+            return;
+          }
+          batch = new ArrayList<>(count);
+          for (; count > 0; count--) {
+            batch.add(ring[head]);
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+          }
+          notFull.signalAll();
+        } finally {
+          lock.unlock();
+        }
+        try {
+          listener.accept(batch);
+        } catch (RuntimeException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * An append-only log of a scan: every URL that enters the frontier and every page that is done.
+ * Records are written in batches by a background thread, so workers only put them into a queue.
+ * Each record is prefixed with its length, a record cut short by a crash is dropped on replay.
+ */
+class ScanJournal implements Closeable {
+
+  private static final byte QUEUED = 1;
+  private static final byte PAGE = 2;
+
+  private static final long REPLAY_WINDOW = 256 * 1024 * 1024;
+  private static final long SYNC_INTERVAL = 1000;
+
+  // marks the end of the record stream for the writer thread
+  private static final Object END = new Object();
+
+  private final FileChannel channel;
+  private final DataOutputStream out;
+  private final BlockingQueue<Object> records = new LinkedBlockingQueue<>();
+  private final Thread writer;
+  private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+  private final DataOutputStream record = new DataOutputStream(recordBuffer);
+  private long syncedAt;
+  // set by the writer thread when it gives up, later records are dropped
+  private volatile IOException failure;
+
+  private ScanJournal(FileChannel channel) {
+    this.channel = channel;
+    this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+    this.writer = new Thread(this::writeRecords, "scan-journal");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Creates a new journal, an existing file is overwritten.
+   */
+  static ScanJournal create(Path file) throws IOException {
+    return new ScanJournal(FileChannel.open(file,
+      StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+  }
+
+  /**
+   * Replays an existing journal and opens it to append new records after the last complete one.
+   *
+   * @param pages receives the pages that were done, in the order they were recorded
+   * @param pending receives the URLs that entered the frontier but were never done, and the links of done pages
+   *                that never entered it, the journal may end between a page and the records of its links
+   */
+  static ScanJournal resume(Path file, Consumer<PageInfo> pages, Consumer<String> pending) throws IOException {
+    if (!Files.exists(file)) {
+      return create(file);
+    }
+    Set<String> queued = new LinkedHashSet<>();
+    Set<String> done = new HashSet<>();
+    List<PageInfo> donePages = new ArrayList<>();
+    long valid = replay(file, page -> {
+      done.add(page.getUrl());
+      donePages.add(page);
+      pages.accept(page);
+    }, queued::add);
+    for (PageInfo page : donePages) {
+      queued.addAll(page.getLinks());
+    }
+    queued.stream().filter(url -> !done.contains(url)).forEach(pending);
+
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+    channel.truncate(valid);
+    channel.position(valid);
+    return new ScanJournal(channel);
+  }
+
+  void queued(String url) {
+    if (failure == null) {
+      records.add(url);
+    }
+  }
+
+  void pageDone(PageInfo pageInfo) {
+    if (failure == null) {
+      records.add(pageInfo);
+    }
+  }
+
+  /**
+   * Writes the records that are still queued and closes the file.
+   *
+   * @throws IOException if the journal could not be written, then it lacks the records since the failure
+   */
+  @Override
+  public void close() throws IOException {
+    records.add(END);
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      if (failure != null) {
+        throw new IOException("The journal is incomplete", failure);
+      }
+      channel.force(false);
+    } finally {
+      channel.close();
+    }
+  }
+
+  private void writeRecords() {
+    List<Object> batch = new ArrayList<>();
+    try {
+      while (true) {
+        batch.add(records.take());
+        records.drainTo(batch);
+        boolean end = false;
+        for (Object r : batch) {
+          if (r == END) {
+            end = true;
+          } else {
+            write(r);
+          }
+        }
+        batch.clear();
+        out.flush();
+        if (end) {
+          return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - syncedAt > SYNC_INTERVAL) {
+          channel.force(false);
+          syncedAt = now;
+        }
+      }
+    } catch (IOException e) {
+      // the scan goes on without a journal, the failure is reported when the journal is closed
+      failure = e;
+      records.clear();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void write(Object r) throws IOException {
+    recordBuffer.reset();
+    if (r instanceof PageInfo) {
+      record.writeByte(PAGE);
+      writePage(record, (PageInfo) r);
+    } else {
+      record.writeByte(QUEUED);
+      BinaryStrings.write(record, (String) r);
+    }
+    record.flush();
+    out.writeInt(recordBuffer.size());
+    recordBuffer.writeTo(out);
+  }
+
+  /**
+   * Writes a page in the format of a journal record, without the record type. The anchors go last,
+   * so that the pages written before they were recorded can be read as well.
+   */
+  static void writePage(DataOutputStream out, PageInfo page) throws IOException {
+    BinaryStrings.write(out, page.getUrl());
+    out.writeByte(page.getStatus().ordinal());
+    BinaryStrings.write(out, page.getMessage());
+    out.writeInt(page.getHttpStatus());
+    BinaryStrings.write(out, page.getContentType());
+    out.writeInt(page.getLinks().size());
+    for (String link : page.getLinks()) {
+      BinaryStrings.write(out, link);
+    }
+    out.writeInt(page.getAnchors().size());
+    for (String anchor : page.getAnchors()) {
+      BinaryStrings.write(out, anchor);
+    }
+  }
+
+  static PageInfo readPage(ByteBuffer r) {
+    String url = BinaryStrings.read(r);
+    ScanStatus status = ScanStatus.values()[r.get()];
+    PageInfo.Builder page = status == ScanStatus.DONE ? PageInfo.done(url)
+      : status == ScanStatus.BROKEN ? PageInfo.broken(url) : PageInfo.inProgress(url);
+    page.message(BinaryStrings.read(r)).httpStatus(r.getInt()).contentType(BinaryStrings.read(r));
+    int count = r.getInt();
+    Set<String> links = new HashSet<>(count * 2);
+    for (int i = 0; i < count; i++) {
+      links.add(BinaryStrings.read(r));
+    }
+    page.links(links);
+    // the record is limited to its end, a page written before anchors were recorded ends here
+    if (r.hasRemaining()) {
+      int anchorCount = r.getInt();
+      Set<String> anchors = new HashSet<>(anchorCount * 2);
+      for (int i = 0; i < anchorCount; i++) {
+        anchors.add(BinaryStrings.read(r));
+      }
+      page.anchors(anchors);
+    }
+    return page.build();
+  }
+
+  // reads the journal through memory mapped windows, returns the length of the complete part
+  private static long replay(Path file, Consumer<PageInfo> pages, Consumer<String> queued) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long position = 0;
+      while (position < size) {
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REPLAY_WINDOW, size - position));
+        while (window.remaining() >= 4) {
+          int length = window.getInt(window.position());
+          if (length <= 0 || length > window.remaining() - 4) {
+            break;
+          }
+          window.position(window.position() + 4);
+          ByteBuffer r = window.slice();
+          r.limit(length);
+          readRecord(r, pages, queued);
+          window.position(window.position() + length);
+        }
+        if (window.position() == 0) {
+          break;
+        }
+        position += window.position();
+      }
+      return position;
+    }
+  }
+
+  private static void readRecord(ByteBuffer r, Consumer<PageInfo> pages, Consumer<String> queued) {
+    byte type = r.get();
+    if (type == QUEUED) {
+      queued.accept(BinaryStrings.read(r));
+    } else if (type == PAGE) {
+      pages.accept(readPage(r));
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Timings and counters of a scan session. Every phase of a fetch is recorded into its own histogram,
+ * recording is lock-free, so workers do not contend on it.
+ */
+public class ScanMetrics implements ScanMetricsMXBean {
+
+  private static final AtomicInteger sessionCounter = new AtomicInteger();
+
+  private final Map<FetchPhase, LatencyHistogram> phases = new EnumMap<>(FetchPhase.class);
+  private final LongAdder bytesDownloaded = new LongAdder();
+  private final LongAdder connectionsOpened = new LongAdder();
+  private final LongAdder connectionsReused = new LongAdder();
+  private volatile IntSupplier frontierDepth = () -> 0;
+  private volatile IntSupplier concurrencyLimit = () -> 0;
+  private volatile Supplier<Map<String, Integer>> hostConcurrencyLimits = Collections::emptyMap;
+
+  ScanMetrics() {
+    for (FetchPhase phase : FetchPhase.values()) {
+      phases.put(phase, new LatencyHistogram());
+    }
+  }
+
+  void record(FetchPhase phase, long nanos) {
+    phases.get(phase).record(nanos);
+  }
+
+  void addBytesDownloaded(long bytes) {
+    bytesDownloaded.add(bytes);
+  }
+
+  void connectionOpened() {
+    connectionsOpened.increment();
+  }
+
+  void connectionReused() {
+    connectionsReused.increment();
+  }
+
+  void frontierDepth(IntSupplier frontierDepth) {
+    this.frontierDepth = frontierDepth;
+  }
+
+  void concurrencyLimits(IntSupplier concurrencyLimit, Supplier<Map<String, Integer>> hostConcurrencyLimits) {
+    this.concurrencyLimit = concurrencyLimit;
+    this.hostConcurrencyLimits = hostConcurrencyLimits;
+  }
+
+  public PhaseStatistics getPhase(FetchPhase phase) {
+    return new PhaseStatistics(phase, phases.get(phase));
+  }
+
+  @Override
+  public List<PhaseStatistics> getPhases() {
+    return Stream.of(FetchPhase.values()).map(this::getPhase).collect(Collectors.toList());
+  }
+
+  @Override
+  public long getBytesDownloaded() {
+    return bytesDownloaded.sum();
+  }
+
+  @Override
+  public long getConnectionsOpened() {
+    return connectionsOpened.sum();
+  }
+
+  @Override
+  public long getConnectionsReused() {
+    return connectionsReused.sum();
+  }
+
+  @Override
+  public int getFrontierDepth() {
+    return frontierDepth.getAsInt();
+  }
+
+  @Override
+  public int getConcurrencyLimit() {
+    return concurrencyLimit.getAsInt();
+  }
+
+  @Override
+  public Map<String, Integer> getHostConcurrencyLimits() {
+    return hostConcurrencyLimits.get();
+  }
+
+  /**
+   * Registers the metrics with the platform MBean server, each session gets a name of its own.
+   *
+   * @return the name to unregister the metrics with, or null if the registration failed
+   */
+  ObjectName register() {
+    try {
+      ObjectName name = new ObjectName("ru.stqa.linkchecker:type=ScanMetrics,session=" + sessionCounter.incrementAndGet());
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+      return name;
+    } catch (JMException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  static void unregister(ObjectName name) {
+    if (name == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    } catch (JMException e) {
+      e.printStackTrace();
+    }
+  }
+
+  public void print(PrintStream out) {
+    out.printf("%-12s %9s %10s %10s %10s %10s %10s%n", "phase, ms", "count", "mean", "p50", "p90", "p99", "max");
+    for (PhaseStatistics phase : getPhases()) {
+      out.printf("%-12s %9d %10.2f %10.2f %10.2f %10.2f %10.2f%n", phase.getName(), phase.getCount(),
+        phase.getMeanMillis(), phase.getP50Millis(), phase.getP90Millis(), phase.getP99Millis(), phase.getMaxMillis());
+    }
+    out.printf("bytes downloaded: %d%n", getBytesDownloaded());
+    out.printf("connections opened: %d, reused: %d%n", getConnectionsOpened(), getConnectionsReused());
+    if (getConcurrencyLimit() > 0) {
+      out.printf("concurrency limit: %d%n", getConcurrencyLimit());
+    }
+  }
+
+  public static class PhaseStatistics {
+
+    private final String name;
+    private final long count;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p90Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+
+    PhaseStatistics(FetchPhase phase, LatencyHistogram histogram) {
+      name = phase.name();
+      count = histogram.getCount();
+      meanMillis = histogram.getMean() / 1e6;
+      p50Millis = histogram.getPercentile(50) / 1e6;
+      p90Millis = histogram.getPercentile(90) / 1e6;
+      p99Millis = histogram.getPercentile(99) / 1e6;
+      maxMillis = histogram.getMax() / 1e6;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double getMeanMillis() {
+      return meanMillis;
+    }
+
+    public double getP50Millis() {
+      return p50Millis;
+    }
+
+    public double getP90Millis() {
+      return p90Millis;
+    }
+
+    public double getP99Millis() {
+      return p99Millis;
+    }
+
+    public double getMaxMillis() {
+      return maxMillis;
+    }
+  }
+}
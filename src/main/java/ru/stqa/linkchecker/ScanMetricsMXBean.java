@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The management interface of {@link ScanMetrics}, so that a running scan can be watched with JConsole
+ * or any other JMX client.
+ */
+public interface ScanMetricsMXBean {
+
+  List<ScanMetrics.PhaseStatistics> getPhases();
+
+  long getBytesDownloaded();
+
+  long getConnectionsOpened();
+
+  long getConnectionsReused();
+
+  int getFrontierDepth();
+
+  /**
+   * The current limit of requests in flight in the adaptive mode, 0 otherwise.
+   */
+  int getConcurrencyLimit();
+
+  /**
+   * The current limits of requests in flight by host origin in the adaptive mode, empty otherwise.
+   */
+  Map<String, Integer> getHostConcurrencyLimits();
+}
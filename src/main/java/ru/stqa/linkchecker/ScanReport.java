@@ -16,23 +16,45 @@
 
 package ru.stqa.linkchecker;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
+/**
+ * Lists pages that could not be loaded or answered with an error, along with the pages that link to them.
+ * Referrers are taken from the link graph of the scan results, so the report needs no pass over the links
+ * and no memory beyond the list of problem pages. A report with many problems
+ * is split into several files, the first one is written to the given path, the next ones next to it.
+ */
 public class ScanReport {
 
-  private Map<String, List<String>> linkedFrom = new HashMap<>();
-  private List<PageInfo> unavailable = new ArrayList<>();
-  private List<PageInfo> error400 = new ArrayList<>();
-  private List<PageInfo> error500 = new ArrayList<>();
+  private enum Section {
+    UNAVAILABLE("Unavailable pages"),
+    ERROR_400("4xx error"),
+    ERROR_500("5xx error");
+
+    private final String header;
+
+    Section(String header) {
+      this.header = header;
+    }
+  }
+
+  private final ScanResults results;
+  private final List<PageInfo> problems = new ArrayList<>();
+  private int pageSize = 1000;
 
   public ScanReport(ScanResults results) {
+    this.results = results;
+    List<PageInfo> unavailable = new ArrayList<>();
+    List<PageInfo> error400 = new ArrayList<>();
+    List<PageInfo> error500 = new ArrayList<>();
     for (PageInfo pageInfo : results.getScannedPages()) {
       if (pageInfo.getHttpStatus() == 0) {
         unavailable.add(pageInfo);
@@ -41,45 +63,153 @@ public class ScanReport {
       } else if (pageInfo.getHttpStatus() >= 500) {
         error500.add(pageInfo);
       }
-
-      pageInfo.getLinks().forEach(url -> {
-        List<String> seen = linkedFrom.computeIfAbsent(url, k -> new ArrayList<>());
-        seen.add(pageInfo.getUrl());
-      });
     }
+    problems.addAll(unavailable);
+    problems.addAll(error400);
+    problems.addAll(error500);
+  }
+
+  /**
+   * Limits the number of problem pages listed in a single file.
+   */
+  public ScanReport pageSize(int pageSize) {
+    this.pageSize = pageSize;
+    return this;
   }
 
   public void saveTo(String path) throws IOException {
-    try (BufferedWriter out = new BufferedWriter(new FileWriter(path))) {
-      out.write("<html><head><title>Link Checker Report</title>");
-      out.write("<style>");
-      out.write("table { border-collapse: collapse; width: 100%;border: 1px solid gray; vertical-align: top; }");
-      out.write("td, th { border: 1px solid #ddd; vertical-align: top; text-align: left; padding: 8px; }");
-      out.write("th { background-color: #4CAF50; color: white; }");
-      out.write("tr:nth-child(even){ background-color: #f2f2f2; }");
-      out.write("</style>");
-      out.write("</head><body>");
-      out.write("<h1>Link Checker Report</h1>");
-      writeSection(out, "Unavailable pages", unavailable);
-      writeSection(out, "4xx error", error400);
-      writeSection(out, "5xx error", error500);
-      out.write("</body></html>");
+    int pageCount = Math.max(1, (problems.size() + pageSize - 1) / pageSize);
+    for (int page = 0; page < pageCount; page++) {
+      try (Writer out = Files.newBufferedWriter(pageFile(path, page), StandardCharsets.UTF_8)) {
+        writePage(out, path, page, pageCount);
+      }
     }
   }
 
-  private void writeSection(BufferedWriter out, String header, List<PageInfo> pages) throws IOException {
-    if (pages.size() > 0) {
-      out.write(String.format("<h2>%s</h2>", header));
-      out.write("<table><thread><tr><th>URL</th><th>Status</th><th>Seen on pages</th></tr></thread><tbody>");
-      for (PageInfo pageInfo : pages) {
-        out.write(String.format("<tr><td>%s</td><td>%s</td><td>%s</td></tr>",
-          String.format("<a href=\"%s\">%s</a>", pageInfo.getUrl(), pageInfo.getUrl()),
-          pageInfo.getHttpStatus() > 0 ? pageInfo.getHttpStatus() : pageInfo.getMessage(),
-          linkedFrom.getOrDefault(pageInfo.getUrl(), new ArrayList<>()).stream()
-            .map(link -> String.format("<a href=\"%s\">%s</a>", link, link))
-            .collect(Collectors.joining("<br/>"))));
+  static Path pageFile(String path, int page) {
+    Path file = Paths.get(path);
+    if (page == 0) {
+      return file;
+    }
+    String name = file.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    String pageName = dot > 0
+      ? name.substring(0, dot) + "-" + (page + 1) + name.substring(dot)
+      : name + "-" + (page + 1);
+    return file.resolveSibling(pageName);
+  }
+
+  private void writePage(Writer out, String path, int page, int pageCount) throws IOException {
+    out.write("<html><head><title>Link Checker Report</title>");
+    out.write("<style>");
+    out.write("table { border-collapse: collapse; width: 100%;border: 1px solid gray; vertical-align: top; }");
+    out.write("td, th { border: 1px solid #ddd; vertical-align: top; text-align: left; padding: 8px; }");
+    out.write("th { background-color: #4CAF50; color: white; }");
+    out.write("tr:nth-child(even){ background-color: #f2f2f2; }");
+    out.write("</style>");
+    out.write("</head><body>");
+    out.write("<h1>Link Checker Report</h1>");
+    if (pageCount > 1) {
+      writeNavigation(out, path, page, pageCount);
+    }
+
+    Section section = null;
+    int to = Math.min(problems.size(), (page + 1) * pageSize);
+    for (int i = page * pageSize; i < to; i++) {
+      PageInfo pageInfo = problems.get(i);
+      Section rowSection = sectionOf(pageInfo);
+      if (rowSection != section) {
+        if (section != null) {
+          out.write("</tbody></table>");
+        }
+        section = rowSection;
+        out.write("<h2>");
+        out.write(section.header);
+        out.write("</h2>");
+        out.write("<table><thead><tr><th>URL</th><th>Status</th><th>Seen on pages</th></tr></thead><tbody>");
       }
+      writeRow(out, pageInfo, results.getReferrers(pageInfo.getUrl()).iterator());
+    }
+    if (section != null) {
       out.write("</tbody></table>");
     }
+    out.write("</body></html>");
+  }
+
+  private void writeNavigation(Writer out, String path, int page, int pageCount) throws IOException {
+    out.write("<p>Page ");
+    out.write(Integer.toString(page + 1));
+    out.write(" of ");
+    out.write(Integer.toString(pageCount));
+    out.write(":");
+    for (int i = 0; i < pageCount; i++) {
+      out.write(" ");
+      if (i == page) {
+        out.write(Integer.toString(i + 1));
+      } else {
+        writeLink(out, pageFile(path, i).getFileName().toString(), Integer.toString(i + 1));
+      }
+    }
+    out.write("</p>");
+  }
+
+  private static void writeRow(Writer out, PageInfo pageInfo, Iterator<String> referrers) throws IOException {
+    out.write("<tr><td>");
+    writeLink(out, pageInfo.getUrl(), pageInfo.getUrl());
+    out.write("</td><td>");
+    if (pageInfo.getHttpStatus() > 0) {
+      out.write(Integer.toString(pageInfo.getHttpStatus()));
+    } else {
+      writeEscaped(out, pageInfo.getMessage());
+    }
+    out.write("</td><td>");
+    while (referrers.hasNext()) {
+      String referrer = referrers.next();
+      writeLink(out, referrer, referrer);
+      if (referrers.hasNext()) {
+        out.write("<br/>");
+      }
+    }
+    out.write("</td></tr>");
+  }
+
+  private static void writeLink(Writer out, String href, String text) throws IOException {
+    out.write("<a href=\"");
+    writeEscaped(out, href);
+    out.write("\">");
+    writeEscaped(out, text);
+    out.write("</a>");
+  }
+
+  private static void writeEscaped(Writer out, String text) throws IOException {
+    if (text == null) {
+      return;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '&':
+          out.write("&amp;");
+          break;
+        case '<':
+          out.write("&lt;");
+          break;
+        case '>':
+          out.write("&gt;");
+          break;
+        case '"':
+          out.write("&quot;");
+          break;
+        default:
+          out.write(c);
+      }
+    }
+  }
+
+  private static Section sectionOf(PageInfo pageInfo) {
+    if (pageInfo.getHttpStatus() == 0) {
+      return Section.UNAVAILABLE;
+    }
+    return pageInfo.getHttpStatus() < 500 ? Section.ERROR_400 : Section.ERROR_500;
   }
 }
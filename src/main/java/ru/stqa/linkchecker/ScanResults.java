@@ -18,13 +18,16 @@ package ru.stqa.linkchecker;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class ScanResults {
 
   private Map<String, PageInfo> pages = new ConcurrentHashMap<>();
+  private final LinkGraph links = new LinkGraph();
 
   public void addPageInfo(PageInfo pageInfo) {
+    pageInfo.internLinks(links);
     pages.put(pageInfo.getUrl(), pageInfo);
   }
 
@@ -35,4 +38,11 @@ public class ScanResults {
   public Collection<PageInfo> getScannedPages() {
     return pages.values();
   }
+
+  /**
+   * Returns the pages that link to the URL.
+   */
+  public Set<String> getReferrers(String url) {
+    return links.referrers(url);
+  }
 }
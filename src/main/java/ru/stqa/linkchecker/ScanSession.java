@@ -16,85 +16,420 @@
 
 package ru.stqa.linkchecker;
 
-import org.apache.http.client.config.CookieSpecs;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
-
-import java.util.ArrayList;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public class ScanSession implements Runnable {
 
+  // A marker put into the queue to wake the coordinator up when a worker is done or the scan is interrupted.
+  // It is compared by reference, so it can't be confused with a real URL.
+  private static final String WAKE_UP = new String("wake up");
+
   private ScanSettings settings;
   private ScanResults results = new ScanResults();
   private AtomicInteger workerCounter = new AtomicInteger();
-  private ConcurrentLinkedQueue<String> urlQueue = new ConcurrentLinkedQueue<>();
-  private List<Consumer<PageInfo>> listeners = new ArrayList<>();
+  private BlockingQueue<String> urlQueue = new LinkedBlockingQueue<>();
+  private UrlFingerprintSet seenUrls = new UrlFingerprintSet();
+  private ScanEventBus listeners;
+  private Semaphore requestPermits;
+  private HeadRequestPolicy headRequestPolicy;
+  private HostScheduler hostScheduler;
+  // limits the requests in flight of the whole scan in the adaptive mode, the scheduler limits them per host
+  private ConcurrencyLimiter concurrencyLimiter;
+  private ScanJournal journal;
+  private ValidatorStore validatorStore;
+  private ScanMetrics metrics = new ScanMetrics();
+  private UrlCanonicalizer canonicalizer;
+  private String baseUrl;
+  private UrlRouter router;
+  private SharedScanResources shared;
+  private LinkResultCache linkResults;
+  // permits of the shared request budget taken by this session and not returned yet
+  private AtomicInteger budgetHeld = new AtomicInteger();
+  // URLs that entered the frontier and are not done yet, including the ones being fetched
+  private AtomicInteger unfinishedUrls = new AtomicInteger();
 
-  private CloseableHttpClient httpclient;
-  private boolean interrupted = false;
-  private boolean stopped = false;
+  private HttpTransport transport;
+  private volatile boolean interrupted = false;
+  private volatile boolean timedOut = false;
+  private volatile boolean running = false;
+  private volatile boolean stopped = false;
 
   public ScanSession(ScanSettings settings) {
-    this.settings = settings;
+    this(settings, null);
+  }
 
-    PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
-    cm.setMaxTotal(settings.getThreadCount());
-    cm.setDefaultMaxPerRoute(settings.getThreadCount());
+  /**
+   * Creates a session that uses the transport, link results and request budget shared with other sessions,
+   * the shared resources are not closed when the session ends.
+   */
+  ScanSession(ScanSettings settings, SharedScanResources shared) {
+    this.settings = settings;
+    this.shared = shared;
+    this.canonicalizer = new UrlCanonicalizer(settings);
+    this.baseUrl = canonicalizer.canonicalize(settings.getBaseUrl());
+    if (settings.isAdaptiveConcurrency()) {
+      int maxPerHost = settings.getMaxConnectionsPerHost() > 0
+        ? settings.getMaxConnectionsPerHost()
+        : settings.getThreadCount();
+      this.concurrencyLimiter = new ConcurrencyLimiter(Math.min(4, settings.getThreadCount()), settings.getThreadCount());
+      this.hostScheduler = new HostScheduler(0, settings.getRequestsPerSecondPerHost(), maxPerHost,
+        settings.getHostFailureThreshold());
+      metrics.concurrencyLimits(concurrencyLimiter::getLimit, hostScheduler::limits);
+    } else {
+      this.hostScheduler = new HostScheduler(settings.getMaxConnectionsPerHost(), settings.getRequestsPerSecondPerHost(),
+        0, settings.getHostFailureThreshold());
+    }
+    this.listeners = new ScanEventBus(settings.getListenerBufferSize());
 
-    httpclient = HttpClients.custom().setConnectionManager(cm)
-      .setDefaultRequestConfig(RequestConfig.custom().setCookieSpec(CookieSpecs.STANDARD).build())
-      .build();
+    if (shared != null) {
+      headRequestPolicy = shared.getHeadRequestPolicy();
+      transport = shared.getTransport();
+      linkResults = shared.getLinkResults();
+    } else if (settings.getTransportType() == TransportType.ASYNC) {
+      headRequestPolicy = new HeadRequestPolicy(settings.isHeadRequests());
+      transport = new JdkAsyncHttpTransport(settings, metrics);
+    } else {
+      headRequestPolicy = new HeadRequestPolicy(settings.isHeadRequests());
+      transport = new ApacheHttpTransport(settings, metrics);
+    }
+    metrics.frontierDepth(() -> urlQueue.size() + hostScheduler.size());
   }
 
+  /**
+   * Adds a listener that gets every page event, one by one. The events come on a thread of the listener,
+   * and the scan waits only if the listener falls behind by more than the listener buffer size.
+   */
   public void addListener(Consumer<PageInfo> listener) {
-    listeners.add(listener);
+    addBatchListener(batch -> batch.forEach(listener), OverflowPolicy.BLOCK);
+  }
+
+  /**
+   * Adds a listener that gets the page events collected since its previous call as a batch, on a thread of its own.
+   *
+   * @param policy what to do when the listener falls behind by more than the listener buffer size
+   */
+  public void addBatchListener(Consumer<List<PageInfo>> listener, OverflowPolicy policy) {
+    listeners.subscribe(listener, policy);
   }
 
   @Override
   public void run() {
-    urlQueue.add(settings.getStartUrl());
-
-    ExecutorService service = Executors.newFixedThreadPool(settings.getThreadCount());
-
-    while (!interrupted && (workerCounter.intValue() > 0 || urlQueue.size() > 0)) {
-      Optional.ofNullable(urlQueue.poll()).ifPresent(url -> {
-        if (results.getPageInfo(url) == null) {
-          PageInfo pageInfo = PageInfo.inProgress(url).build();
-          listeners.forEach(l -> l.accept(pageInfo));
-          results.addPageInfo(pageInfo);
-          service.submit(new ScanWorker(this, url, url.startsWith(settings.getBaseUrl())));
-          workerCounter.incrementAndGet();
+    try {
+      if (settings.getValidatorStore() != null) {
+        validatorStore = ValidatorStore.load(Paths.get(settings.getValidatorStore()));
+      }
+      if (shared == null && settings.getLinkCache() != null) {
+        linkResults = LinkResultCache.load(Paths.get(settings.getLinkCache()), settings);
+      }
+      openJournal();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    ObjectName metricsName = metrics.register();
+    if (results.getScannedPages().isEmpty() && urlQueue.isEmpty()) {
+      String startUrl = canonicalizer.canonicalize(settings.getStartUrl());
+      // in a cluster only the node that owns the start URL begins the scan, the others wait for URLs
+      if (router == null || router.isLocal(startUrl)) {
+        seenUrls.add(startUrl);
+        enqueue(startUrl);
+      }
+    }
+    running = true;
+
+    ExecutorService service;
+    if (settings.getTransportType() == TransportType.ASYNC) {
+      // workers only dispatch requests, responses are handled on the transport threads
+      service = Executors.newSingleThreadExecutor();
+      requestPermits = new Semaphore(settings.getThreadCount());
+    } else if (settings.isVirtualThreads()) {
+      service = newVirtualThreadExecutor();
+      requestPermits = new Semaphore(settings.getThreadCount());
+    } else {
+      service = Executors.newFixedThreadPool(settings.getThreadCount());
+    }
+
+    long scanDeadline = settings.getScanTimeout() > 0
+      ? System.currentTimeMillis() + settings.getScanTimeout()
+      : Long.MAX_VALUE;
+    try {
+      while (!interrupted) {
+        String url;
+        while (!interrupted && !isSaturated() && (url = hostScheduler.next(System.currentTimeMillis())) != null) {
+          dispatch(service, url);
+        }
+        if (workerCounter.get() == 0 && urlQueue.isEmpty() && hostScheduler.isEmpty() && router == null) {
+          break;
         }
-      });
-      Thread.yield();
+        long now = System.currentTimeMillis();
+        if (now >= scanDeadline) {
+          timedOut = true;
+          break;
+        }
+        // a saturated scan waits for a worker to finish, that wakes the coordinator up
+        long delay = isSaturated() ? Long.MAX_VALUE : hostScheduler.nextDelay(now);
+        if (scanDeadline != Long.MAX_VALUE) {
+          delay = Math.min(delay, scanDeadline - now);
+        }
+        url = delay == Long.MAX_VALUE ? urlQueue.take() : urlQueue.poll(delay, TimeUnit.MILLISECONDS);
+        for (; url != null; url = urlQueue.poll()) {
+          if (url != WAKE_UP) {
+            PageInfo cached = cachedLinkResult(url);
+            if (cached != null) {
+              // a cached link does not wait for its host, it would only take a turn of a URL that is fetched
+              report(cached);
+              unfinishedUrls.decrementAndGet();
+            } else if (hostScheduler.add(url, System.currentTimeMillis())) {
+              // the host is resolved while the URL waits for its turn
+              transport.prefetch(url);
+            } else {
+              reportUnreachable(url);
+            }
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
 
     service.shutdownNow();
+    if (timedOut) {
+      abandonPagesInProgress();
+    }
+    if (shared != null) {
+      // workers that were dropped by the executor will never give their permits back
+      shared.getRequestBudget().release(budgetHeld.getAndSet(0));
+    }
+    if (journal != null) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        // the results are complete, only the journal is not, the rest is saved anyway
+        e.printStackTrace();
+      }
+    }
+    try {
+      if (shared == null) {
+        transport.close();
+      }
+      if (validatorStore != null) {
+        validatorStore.save(Paths.get(settings.getValidatorStore()), url -> results.getPageInfo(url) != null);
+      }
+      if (shared == null && linkResults != null) {
+        linkResults.save(Paths.get(settings.getLinkCache()));
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    ScanMetrics.unregister(metricsName);
+    try {
+      listeners.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
     stopped = true;
   }
 
-  CloseableHttpClient getHttpClient() {
-    return httpclient;
+  private void abandonPagesInProgress() {
+    List<PageInfo> abandoned = results.getScannedPages().stream()
+      .filter(page -> page.getStatus() == ScanStatus.IN_PROGRESS)
+      .map(page -> PageInfo.broken(page.getUrl()).message("Scan time is over").build())
+      .collect(Collectors.toList());
+    for (PageInfo pageInfo : abandoned) {
+      results.addPageInfo(pageInfo);
+      listeners.publish(pageInfo);
+    }
+  }
+
+  private void openJournal() throws IOException {
+    if (settings.getJournal() == null) {
+      return;
+    }
+    Path file = Paths.get(settings.getJournal());
+    if (!settings.isResume()) {
+      journal = ScanJournal.create(file);
+      return;
+    }
+    journal = ScanJournal.resume(file, pageInfo -> {
+      seenUrls.add(pageInfo.getUrl());
+      results.addPageInfo(pageInfo);
+      listeners.publish(pageInfo);
+    }, url -> {
+      seenUrls.add(url);
+      if (router == null || router.isLocal(url)) {
+        unfinishedUrls.incrementAndGet();
+        urlQueue.add(url);
+      } else {
+        // a link of a done page that the crash kept from being forwarded
+        router.forward(url);
+      }
+    });
+  }
+
+  private void enqueue(String url) {
+    if (journal != null) {
+      journal.queued(url);
+    }
+    unfinishedUrls.incrementAndGet();
+    urlQueue.add(url);
+  }
+
+  private void route(String url) {
+    if (router == null || router.isLocal(url)) {
+      enqueue(url);
+    } else {
+      router.forward(url);
+    }
+  }
+
+  /**
+   * Makes the session a node of a cluster: links owned by other nodes are passed to the router, and the scan
+   * does not end when the frontier is empty, because other nodes can send more URLs. It ends when interrupted.
+   * Must be called before the session is started.
+   */
+  void joinCluster(UrlRouter router) {
+    this.router = router;
+  }
+
+  /**
+   * Adds a URL found by another node of the cluster, unless it was seen before.
+   */
+  void submit(String url) {
+    if (seenUrls.add(url)) {
+      enqueue(url);
+    }
+  }
+
+  /**
+   * Tells whether the session has nothing to do until it gets more URLs.
+   */
+  boolean isIdle() {
+    return stopped || (running && unfinishedUrls.get() == 0);
+  }
+
+  private boolean isSaturated() {
+    return concurrencyLimiter != null && workerCounter.get() >= concurrencyLimiter.getLimit();
+  }
+
+  private void dispatch(ExecutorService service, String url) throws InterruptedException {
+    boolean scanLinks = url.startsWith(baseUrl);
+    PageInfo pageInfo = PageInfo.inProgress(url).build();
+    listeners.publish(pageInfo);
+    results.addPageInfo(pageInfo);
+    if (requestPermits != null) {
+      requestPermits.acquire();
+    }
+    if (shared != null) {
+      shared.getRequestBudget().acquire();
+      budgetHeld.incrementAndGet();
+    }
+    workerCounter.incrementAndGet();
+    service.submit(new ScanWorker(this, url, scanLinks));
+  }
+
+  // only links outside of the base URL are cached, pages are scanned for links every time
+  private PageInfo cachedLinkResult(String url) {
+    return linkResults != null && !url.startsWith(baseUrl) ? linkResults.get(url) : null;
+  }
+
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      // virtual threads are not available in this JVM, the permits still keep the number of threads bounded
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  HttpTransport getTransport() {
+    return transport;
+  }
+
+  HeadRequestPolicy getHeadRequestPolicy() {
+    return headRequestPolicy;
+  }
+
+  UrlCanonicalizer getCanonicalizer() {
+    return canonicalizer;
+  }
+
+  ValidatorStore getValidatorStore() {
+    return validatorStore;
+  }
+
+  public ScanMetrics getMetrics() {
+    return metrics;
   }
 
   public void done(ScanWorker worker) {
-    urlQueue.addAll(worker.getPageInfo().getLinks());
-    results.addPageInfo(worker.getPageInfo());
+    long now = System.currentTimeMillis();
+    if (concurrencyLimiter != null) {
+      // latencies of different hosts are not comparable, the hosts are paced by their own latency, and the scan
+      // as a whole backs off only when the scanned site is overloaded, a failing external host has its own limit
+      concurrencyLimiter.onSample(worker.isScanLinks() && worker.isOverloaded());
+      hostScheduler.sample(worker.getUrl(), worker.getResponseNanos(), worker.isOverloaded());
+    }
+    List<String> unreachable = hostScheduler.recordOutcome(worker.getUrl(), !worker.isConnectionFailure(), now);
+    hostScheduler.release(worker.getUrl(), now);
+    // once the scan time is over the page has already been reported as abandoned
+    boolean retried = !timedOut && (worker.getRetryAfter() >= 0
+      ? hostScheduler.retryAt(worker.getUrl(), now + worker.getRetryAfter(), now)
+      : worker.isTransientFailure() && hostScheduler.retryWithBackoff(worker.getUrl(), now));
+    if (!timedOut) {
+      unreachable.forEach(this::reportUnreachable);
+    }
+    if (!timedOut && !retried) {
+      report(worker.getPageInfo());
+      if (linkResults != null && !worker.isScanLinks()) {
+        linkResults.put(worker.getPageInfo());
+      }
+    }
+    if (!retried) {
+      hostScheduler.finish(worker.getUrl());
+      unfinishedUrls.decrementAndGet();
+    }
+    if (requestPermits != null) {
+      requestPermits.release();
+    }
+    if (shared != null && budgetHeld.getAndUpdate(held -> Math.max(0, held - 1)) > 0) {
+      shared.getRequestBudget().release();
+    }
+    // links are queued before the counter goes down, so the coordinator sees them before it checks the counter
     workerCounter.decrementAndGet();
-    listeners.forEach(l -> l.accept(worker.getPageInfo()));
+    urlQueue.add(WAKE_UP);
+  }
+
+  // the URL waited for a host that is down, it is not fetched
+  private void reportUnreachable(String url) {
+    report(PageInfo.broken(url).message("Host unreachable").build());
+    unfinishedUrls.decrementAndGet();
+  }
+
+  private void report(PageInfo pageInfo) {
+    results.addPageInfo(pageInfo);
+    if (journal != null) {
+      journal.pageDone(pageInfo);
+    }
+    listeners.publish(pageInfo);
+    pageInfo.getLinks().stream().filter(seenUrls::add).forEach(this::route);
   }
 
   public void interrupt() {
     interrupted = true;
+    urlQueue.add(WAKE_UP);
   }
 
   public ScanResults getResults() {
@@ -18,12 +18,39 @@ package ru.stqa.linkchecker;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
 
 public class ScanSettings {
 
   private final String startUrl;
   private final String baseUrl;
   private final int threadCount;
+  private boolean virtualThreads;
+  private TransportType transportType = TransportType.BLOCKING;
+  private boolean headRequests = true;
+  private int maxConnectionsPerHost;
+  private double requestsPerSecondPerHost;
+  private String journal;
+  private boolean resume;
+  private String validatorStore;
+  private Integer connectTimeout;
+  private Integer socketTimeout;
+  private Integer requestTimeout;
+  private long scanTimeout;
+  private boolean stripFragments = true;
+  private boolean sortQueryParameters;
+  private List<String> ignoredQueryParameters;
+  private List<String> caseInsensitiveHosts;
+  private String linkCache;
+  private Long linkCacheSuccessTtl;
+  private Long linkCacheErrorTtl;
+  private Integer linkCacheSize;
+  private Long dnsCacheTtl;
+  private Long dnsNegativeCacheTtl;
+  private Integer listenerBufferSize;
+  private boolean adaptiveConcurrency;
+  private Integer hostFailureThreshold;
 
   public ScanSettings(String startUrl, int threadCount) throws MalformedURLException {
     this.startUrl = startUrl;
@@ -42,4 +69,317 @@ public class ScanSettings {
     return threadCount;
   }
 
+  /**
+   * Runs each worker on its own virtual thread instead of a fixed pool, in this mode the thread count
+   * limits the number of requests in flight rather than the number of OS threads.
+   */
+  public ScanSettings virtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+    return this;
+  }
+
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * Selects the HTTP engine. With the asynchronous one the thread count limits the number of requests in flight,
+   * and a few I/O threads serve all of them.
+   */
+  public ScanSettings transportType(TransportType transportType) {
+    this.transportType = transportType;
+    return this;
+  }
+
+  public TransportType getTransportType() {
+    return transportType == null ? TransportType.BLOCKING : transportType;
+  }
+
+  /**
+   * Checks links that are not going to be scanned with HEAD requests, falling back to GET for hosts
+   * that reject HEAD or answer it differently.
+   */
+  public ScanSettings headRequests(boolean headRequests) {
+    this.headRequests = headRequests;
+    return this;
+  }
+
+  public boolean isHeadRequests() {
+    return headRequests;
+  }
+
+  /**
+   * Limits the number of concurrent requests to a single host, 0 means that only the thread count applies.
+   */
+  public ScanSettings maxConnectionsPerHost(int maxConnectionsPerHost) {
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+    return this;
+  }
+
+  public int getMaxConnectionsPerHost() {
+    return maxConnectionsPerHost;
+  }
+
+  /**
+   * Limits the rate of requests to a single host, 0 means no limit.
+   */
+  public ScanSettings requestsPerSecondPerHost(double requestsPerSecondPerHost) {
+    this.requestsPerSecondPerHost = requestsPerSecondPerHost;
+    return this;
+  }
+
+  public double getRequestsPerSecondPerHost() {
+    return requestsPerSecondPerHost;
+  }
+
+  /**
+   * Records the progress of the scan to a file, so that it can be resumed after a crash.
+   */
+  public ScanSettings journal(String journal) {
+    this.journal = journal;
+    return this;
+  }
+
+  public String getJournal() {
+    return journal;
+  }
+
+  /**
+   * Continues the scan recorded in the journal instead of starting from scratch.
+   */
+  public ScanSettings resume(boolean resume) {
+    this.resume = resume;
+    return this;
+  }
+
+  public boolean isResume() {
+    return resume;
+  }
+
+  /**
+   * Keeps ETag and Last-Modified validators of scanned pages in a file between scans, so that pages that did not
+   * change are neither downloaded nor parsed again.
+   */
+  public ScanSettings validatorStore(String validatorStore) {
+    this.validatorStore = validatorStore;
+    return this;
+  }
+
+  public String getValidatorStore() {
+    return validatorStore;
+  }
+
+  /**
+   * Limits the time to establish a connection, in milliseconds, 0 means no limit.
+   */
+  public ScanSettings connectTimeout(int connectTimeout) {
+    this.connectTimeout = connectTimeout;
+    return this;
+  }
+
+  public int getConnectTimeout() {
+    return connectTimeout == null ? 10_000 : connectTimeout;
+  }
+
+  /**
+   * Limits the time to wait for the next piece of data from a server, in milliseconds, 0 means no limit.
+   */
+  public ScanSettings socketTimeout(int socketTimeout) {
+    this.socketTimeout = socketTimeout;
+    return this;
+  }
+
+  public int getSocketTimeout() {
+    return socketTimeout == null ? 30_000 : socketTimeout;
+  }
+
+  /**
+   * Limits the total time of a request, including reading the body, in milliseconds, 0 means no limit.
+   * Unlike the socket timeout it also stops servers that keep sending data slowly or endlessly.
+   */
+  public ScanSettings requestTimeout(int requestTimeout) {
+    this.requestTimeout = requestTimeout;
+    return this;
+  }
+
+  public int getRequestTimeout() {
+    return requestTimeout == null ? 60_000 : requestTimeout;
+  }
+
+  /**
+   * Limits the total time of the scan, in milliseconds, 0 means no limit. Pages that are still being checked
+   * when the time is over are reported as broken, pages that were not requested yet are not reported.
+   */
+  public ScanSettings scanTimeout(long scanTimeout) {
+    this.scanTimeout = scanTimeout;
+    return this;
+  }
+
+  public long getScanTimeout() {
+    return scanTimeout;
+  }
+
+  /**
+   * Strips fragments from links, so that links to different parts of a page lead to a single request.
+   * Links with fragments are still kept in the page info for anchor checks.
+   */
+  public ScanSettings stripFragments(boolean stripFragments) {
+    this.stripFragments = stripFragments;
+    return this;
+  }
+
+  public boolean isStripFragments() {
+    return stripFragments;
+  }
+
+  /**
+   * Sorts query parameters of links by name, for sites that do not depend on the order of parameters.
+   */
+  public ScanSettings sortQueryParameters(boolean sortQueryParameters) {
+    this.sortQueryParameters = sortQueryParameters;
+    return this;
+  }
+
+  public boolean isSortQueryParameters() {
+    return sortQueryParameters;
+  }
+
+  /**
+   * Removes query parameters that do not change the page, like tracking ones, from links.
+   * A name ending with an asterisk matches all the parameters starting with it, for example utm_*.
+   */
+  public ScanSettings ignoredQueryParameters(List<String> ignoredQueryParameters) {
+    this.ignoredQueryParameters = ignoredQueryParameters;
+    return this;
+  }
+
+  public List<String> getIgnoredQueryParameters() {
+    return ignoredQueryParameters == null ? Collections.emptyList() : ignoredQueryParameters;
+  }
+
+  /**
+   * Lists hosts that serve paths case-insensitively, paths of links to them are lowercased.
+   */
+  public ScanSettings caseInsensitiveHosts(List<String> caseInsensitiveHosts) {
+    this.caseInsensitiveHosts = caseInsensitiveHosts;
+    return this;
+  }
+
+  public List<String> getCaseInsensitiveHosts() {
+    return caseInsensitiveHosts == null ? Collections.emptyList() : caseInsensitiveHosts;
+  }
+
+  /**
+   * Keeps the results of checked links that are not scanned in a file between scans, so that links checked
+   * recently are not requested again.
+   */
+  public ScanSettings linkCache(String linkCache) {
+    this.linkCache = linkCache;
+    return this;
+  }
+
+  public String getLinkCache() {
+    return linkCache;
+  }
+
+  /**
+   * How long a working link is taken from the cache, in milliseconds.
+   */
+  public ScanSettings linkCacheSuccessTtl(long linkCacheSuccessTtl) {
+    this.linkCacheSuccessTtl = linkCacheSuccessTtl;
+    return this;
+  }
+
+  public long getLinkCacheSuccessTtl() {
+    return linkCacheSuccessTtl == null ? 7 * 24 * 60 * 60 * 1000L : linkCacheSuccessTtl;
+  }
+
+  /**
+   * How long a broken link is taken from the cache, in milliseconds.
+   */
+  public ScanSettings linkCacheErrorTtl(long linkCacheErrorTtl) {
+    this.linkCacheErrorTtl = linkCacheErrorTtl;
+    return this;
+  }
+
+  public long getLinkCacheErrorTtl() {
+    return linkCacheErrorTtl == null ? 60 * 60 * 1000L : linkCacheErrorTtl;
+  }
+
+  /**
+   * Limits the number of links in the cache, the least recently used ones are dropped first.
+   */
+  public ScanSettings linkCacheSize(int linkCacheSize) {
+    this.linkCacheSize = linkCacheSize;
+    return this;
+  }
+
+  public int getLinkCacheSize() {
+    return linkCacheSize == null ? 100_000 : linkCacheSize;
+  }
+
+  /**
+   * How long the resolved addresses of a host are used, in milliseconds.
+   */
+  public ScanSettings dnsCacheTtl(long dnsCacheTtl) {
+    this.dnsCacheTtl = dnsCacheTtl;
+    return this;
+  }
+
+  public long getDnsCacheTtl() {
+    return dnsCacheTtl == null ? 5 * 60 * 1000L : dnsCacheTtl;
+  }
+
+  /**
+   * How long a host name that does not resolve is not looked up again, in milliseconds.
+   */
+  public ScanSettings dnsNegativeCacheTtl(long dnsNegativeCacheTtl) {
+    this.dnsNegativeCacheTtl = dnsNegativeCacheTtl;
+    return this;
+  }
+
+  public long getDnsNegativeCacheTtl() {
+    return dnsNegativeCacheTtl == null ? 60 * 1000L : dnsNegativeCacheTtl;
+  }
+
+  /**
+   * The number of page events a listener may fall behind the scan by.
+   */
+  public ScanSettings listenerBufferSize(int listenerBufferSize) {
+    this.listenerBufferSize = listenerBufferSize;
+    return this;
+  }
+
+  public int getListenerBufferSize() {
+    return listenerBufferSize == null ? 1024 : listenerBufferSize;
+  }
+
+  /**
+   * Finds the number of requests in flight for the scan and for every host by itself, raising it while latency
+   * stays flat and cutting it down when latency or the rate of 5xx answers and connection errors climb.
+   * The thread count and the limit of connections per host become the upper bounds.
+   */
+  public ScanSettings adaptiveConcurrency(boolean adaptiveConcurrency) {
+    this.adaptiveConcurrency = adaptiveConcurrency;
+    return this;
+  }
+
+  public boolean isAdaptiveConcurrency() {
+    return adaptiveConcurrency;
+  }
+
+  /**
+   * The number of connection failures in a row after which a host is considered down, its remaining URLs
+   * are reported as unreachable without requests until a probe gets through. 0 means that hosts are never
+   * considered down.
+   */
+  public ScanSettings hostFailureThreshold(int hostFailureThreshold) {
+    this.hostFailureThreshold = hostFailureThreshold;
+    return this;
+  }
+
+  public int getHostFailureThreshold() {
+    return hostFailureThreshold == null ? 5 : hostFailureThreshold;
+  }
+
 }
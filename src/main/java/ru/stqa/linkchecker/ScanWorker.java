@@ -16,26 +16,44 @@
 
 package ru.stqa.linkchecker;
 
-import org.apache.http.Header;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.util.EntityUtils;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Optional;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 
 class ScanWorker implements Runnable {
 
+  private static final LinkExtractor linkExtractor = new StreamingLinkExtractor();
+  // longer pauses are cut down, so that a single host can not stall the scan for hours
+  private static final long MAX_RETRY_AFTER = 10 * 60 * 1000;
+
   private ScanSession session;
   private String url;
   private boolean scanLinks;
   private PageInfo pageInfo;
+  private long retryAfter = -1;
+  private long elapsedNanos;
+  // the start of the request that gave the response, a HEAD request may be followed by a GET
+  private volatile long requestStart;
+  private long responseNanos;
+  private boolean overloaded;
+  private boolean connectionFailure;
+  private boolean transientFailure;
+  private ValidatorStore.Entry validators;
 
   ScanWorker(ScanSession session, String url, boolean scanLinks) {
     this.session = session;
@@ -45,90 +63,238 @@ class ScanWorker implements Runnable {
 
   @Override
   public void run() {
-    try {
-      pageInfo = handle(url);
-    } catch (Throwable e) {
-      pageInfo = PageInfo.broken(url).message(e.getMessage()).build();
-    }
-    session.done(this);
+    long start = System.nanoTime();
+    requestStart = start;
+    request().whenComplete((response, e) -> {
+      responseNanos = System.nanoTime() - requestStart;
+      if (e != null) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        pageInfo = PageInfo.broken(url).message(cause.getMessage()).build();
+        overloaded = isOverload(cause);
+        connectionFailure = isConnectionFailure(cause);
+        transientFailure = connectionFailure && !hasCause(cause, UnknownHostException.class);
+      } else {
+        try (FetchResponse r = response) {
+          retryAfter = getRetryAfter(r);
+          int status = r.getStatusCode();
+          overloaded = status == 429 || status >= 500;
+          transientFailure = status == 502 || status == 503 || status == 504;
+          pageInfo = handle(r);
+        } catch (Throwable t) {
+          pageInfo = PageInfo.broken(url).message(t.getMessage()).build();
+          overloaded = isOverload(t);
+          transientFailure = isConnectionFailure(t);
+        }
+      }
+      elapsedNanos = System.nanoTime() - start;
+      session.getMetrics().record(FetchPhase.TOTAL, elapsedNanos);
+      session.done(this);
+    });
   }
 
-  private PageInfo handle(String url) throws IOException {
-    try (CloseableHttpResponse response = session.getHttpClient().execute(new HttpGet(url), HttpClientContext.create())) {
-      if (scanLinks) {
-        Header[] headers = response.getHeaders("Content-Type");
-        if (headers.length == 0) {
-          return PageInfo.broken(url).message("No Content-Type header").build();
-        }
-        if (headers.length > 1) {
-          return PageInfo.broken(url).message("Multiple Content-Type headers").build();
-        }
-        String contentType = headers[0].getValue();
-        if (contentType.startsWith("text/")) {
-          return PageInfo.done(url)
-            .httpStatus(response.getStatusLine().getStatusCode())
-            .contentType(contentType)
-            .links(getLinks(EntityUtils.toString(response.getEntity()), url))
-            .build();
+  private CompletableFuture<FetchResponse> request() {
+    HttpTransport transport = session.getTransport();
+    HeadRequestPolicy headPolicy = session.getHeadRequestPolicy();
+    if (scanLinks) {
+      ValidatorStore store = session.getValidatorStore();
+      validators = store != null ? store.get(url) : null;
+      return transport.fetch(url, validators != null ? validators.conditionalHeaders() : Collections.emptyMap(),
+        this::shouldReadBody);
+    }
+    if (!headPolicy.isAllowed(url)) {
+      return transport.fetch(url, this::shouldReadBody);
+    }
+    return transport.head(url).thenCompose(head -> {
+      int headStatus = head.getStatusCode();
+      if (headStatus < 400) {
+        return CompletableFuture.completedFuture(head);
+      }
+      closeQuietly(head);
+      // servers often reject or mishandle HEAD, so an error is confirmed with a GET that does not read the body
+      requestStart = System.nanoTime();
+      return transport.fetch(url, r -> false).thenApply(get -> {
+        if (headStatus == 405 || headStatus == 501 || get.getStatusCode() < 400) {
+          headPolicy.reject(url);
         }
-        return PageInfo.done(url)
-          .httpStatus(response.getStatusLine().getStatusCode())
-          .contentType(contentType)
-          .build();
+        return get;
+      });
+    });
+  }
 
-      } else {
-        return PageInfo.done(url).httpStatus(response.getStatusLine().getStatusCode()).build();
+  // a server that does not accept connections or does not answer in time is likely to be overloaded,
+  // while an unknown host or a broken certificate says nothing about the load
+  private static boolean isOverload(Throwable e) {
+    // socket and connect timeouts of both transports are interrupted I/O
+    return hasCause(e, ConnectException.class) || hasCause(e, InterruptedIOException.class)
+      || hasCause(e, HttpTimeoutException.class) || hasCause(e, TimeoutException.class);
+  }
+
+  // the host is unknown, refuses or resets connections, or does not answer in time
+  private static boolean isConnectionFailure(Throwable e) {
+    return isOverload(e) || hasCause(e, SocketException.class) || hasCause(e, UnknownHostException.class);
+  }
+
+  private static boolean hasCause(Throwable e, Class<? extends Throwable> type) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (type.isInstance(t)) {
+        return true;
       }
     }
+    return false;
   }
 
-  private Set<String> getLinks(String text, String baseUrl) {
-    Document doc = Jsoup.parse(text, baseUrl);
-    Set<String> result = new HashSet<>();
-    for (Element e : doc.select("a, area, link")) {
-      addLink(result, e, "abs:href");
+  private static void closeQuietly(FetchResponse response) {
+    try {
+      response.close();
+    } catch (IOException ignore) {
     }
-    for (Element e : doc.select("img, iframe, audio, embed, video, source, track, script, input")) {
-      addLink(result, e, "abs:src");
+  }
+
+  // the delay in milliseconds a throttling server asks for, or -1 if the response is not a throttling one
+  private static long getRetryAfter(FetchResponse response) {
+    if (response.getStatusCode() != 429 && response.getStatusCode() != 503) {
+      return -1;
     }
-    for (Element e : doc.select("video")) {
-      addLink(result, e, "abs:poster");
+    List<String> headers = response.getHeaders("Retry-After");
+    if (headers.isEmpty()) {
+      return -1;
     }
-    for (Element e : doc.select("object")) {
-      addLink(result, e, "abs:data");
+    String value = headers.get(0).trim();
+    long delay;
+    try {
+      delay = Long.parseLong(value) * 1000;
+    } catch (NumberFormatException e) {
+      try {
+        delay = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli()
+          - System.currentTimeMillis();
+      } catch (DateTimeParseException e2) {
+        return -1;
+      }
     }
-    for (Element e : doc.select("source")) {
-      addLink(result, e, "abs:srcset");
+    return Math.min(Math.max(0, delay), MAX_RETRY_AFTER);
+  }
+
+  private boolean shouldReadBody(FetchResponse response) {
+    List<String> headers = response.getHeaders("Content-Type");
+    return scanLinks && headers.size() == 1 && headers.get(0).startsWith("text/");
+  }
+
+  private PageInfo handle(FetchResponse response) throws IOException {
+    if (scanLinks) {
+      if (response.getStatusCode() == 304 && validators != null) {
+        // not modified since the previous scan, the page has the same links
+        return validators.toPageInfo(url);
+      }
+      List<String> headers = response.getHeaders("Content-Type");
+      if (headers.size() == 0) {
+        return PageInfo.broken(url).message("No Content-Type header").build();
+      }
+      if (headers.size() > 1) {
+        return PageInfo.broken(url).message("Multiple Content-Type headers").build();
+      }
+      String contentType = headers.get(0);
+      if (contentType.startsWith("text/")) {
+        PageInfo page;
+        try (TimedReader body = new TimedReader(response.getBodyReader())) {
+          long start = System.nanoTime();
+          Set<String> anchors = new HashSet<>();
+          Set<String> links = session.getCanonicalizer().canonicalize(linkExtractor.extract(body, url), anchors);
+          page = PageInfo.done(url)
+            .httpStatus(response.getStatusCode())
+            .contentType(contentType)
+            .links(links)
+            .anchors(anchors)
+            .build();
+          session.getMetrics().record(FetchPhase.PARSE, System.nanoTime() - start - body.nanos);
+        }
+        if (session.getValidatorStore() != null) {
+          session.getValidatorStore().update(url, response, page);
+        }
+        return page;
+      }
+      return PageInfo.done(url)
+        .httpStatus(response.getStatusCode())
+        .contentType(contentType)
+        .build();
+
+    } else {
+      return PageInfo.done(url).httpStatus(response.getStatusCode()).build();
     }
-    for (Element e : doc.select("form")) {
-      addLink(result, e, "abs:action");
+  }
+
+  // measures the time spent waiting for the body, so that it can be taken out of the parsing time
+  private static class TimedReader extends FilterReader {
+
+    private long nanos;
+
+    TimedReader(Reader in) {
+      super(in);
     }
-    for (Element e : doc.select("input, button")) {
-      addLink(result, e, "abs:formaction");
+
+    @Override
+    public int read() throws IOException {
+      long start = System.nanoTime();
+      try {
+        return super.read();
+      } finally {
+        nanos += System.nanoTime() - start;
+      }
     }
-    return result;
-  }
-
-  private Set<String> getLinks2(String text, String baseUrl) {
-    Document doc = Jsoup.parse(text, baseUrl);
-    Set<String> result = new HashSet<>();
-    for (Element e : doc.select("a, area, link, img, iframe, audio, embed, video, source, track, script, input, object, form, button")) {
-      addLink(result, e, "abs:href");
-      addLink(result, e, "abs:src");
-      addLink(result, e, "abs:poster");
-      addLink(result, e, "abs:data");
-      addLink(result, e, "abs:srcset");
-      addLink(result, e, "abs:action");
-      addLink(result, e, "abs:formaction");
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      long start = System.nanoTime();
+      try {
+        return super.read(cbuf, off, len);
+      } finally {
+        nanos += System.nanoTime() - start;
+      }
     }
-    return result;
   }
 
-  private void addLink(Set<String> result, Element e, String attrName) {
-    Optional.of(e.attr(attrName)).filter(attr -> attr.length() > 0).ifPresent(result::add);
+  String getUrl() {
+    return url;
+  }
+
+  boolean isScanLinks() {
+    return scanLinks;
   }
 
   public PageInfo getPageInfo() {
     return pageInfo;
   }
+
+  /**
+   * Returns the time from sending the last request to receiving the response headers, or to the failure.
+   * Unlike the whole time of the check, it does not depend on the size of the page and the time to parse it.
+   */
+  long getResponseNanos() {
+    return responseNanos;
+  }
+
+  /**
+   * Tells whether the server answered with 429 or 5xx, or the request failed to connect or timed out.
+   */
+  boolean isOverloaded() {
+    return overloaded;
+  }
+
+  /**
+   * Tells whether the request failed to connect to the host or got no answer from it.
+   */
+  boolean isConnectionFailure() {
+    return connectionFailure;
+  }
+
+  /**
+   * Tells whether the failure may go away by itself: a connection failure other than an unknown host,
+   * or an answer with 502, 503 or 504.
+   */
+  boolean isTransientFailure() {
+    return transientFailure;
+  }
+
+  long getRetryAfter() {
+    return retryAfter;
+  }
 }
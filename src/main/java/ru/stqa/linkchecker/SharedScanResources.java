@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.Semaphore;
+
+/**
+ * What the sessions of a batch share: a single HTTP transport with its connection pool, the knowledge of hosts
+ * that reject HEAD, the results of checked links and a budget of requests in flight across all the sessions.
+ * The DNS cache of the transport is shared as well.
+ */
+class SharedScanResources implements Closeable {
+
+  private final ScanMetrics metrics = new ScanMetrics();
+  private final HttpTransport transport;
+  private final HeadRequestPolicy headRequestPolicy;
+  private final LinkResultCache linkResults;
+  private final Semaphore requestBudget;
+  private final String linkCache;
+
+  /**
+   * @param settings the transport and link cache settings, the thread count is the number of requests in flight
+   *                 for all the sessions
+   */
+  SharedScanResources(ScanSettings settings) throws IOException {
+    transport = settings.getTransportType() == TransportType.ASYNC
+      ? new JdkAsyncHttpTransport(settings, metrics)
+      : new ApacheHttpTransport(settings, metrics);
+    headRequestPolicy = new HeadRequestPolicy(settings.isHeadRequests());
+    requestBudget = new Semaphore(settings.getThreadCount());
+    linkCache = settings.getLinkCache();
+    linkResults = linkCache != null
+      ? LinkResultCache.load(Paths.get(linkCache), settings)
+      : new LinkResultCache(settings);
+  }
+
+  HttpTransport getTransport() {
+    return transport;
+  }
+
+  HeadRequestPolicy getHeadRequestPolicy() {
+    return headRequestPolicy;
+  }
+
+  LinkResultCache getLinkResults() {
+    return linkResults;
+  }
+
+  Semaphore getRequestBudget() {
+    return requestBudget;
+  }
+
+  /**
+   * Metrics of the shared transport: connection setup, first byte and download times of all the sessions.
+   */
+  ScanMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public void close() throws IOException {
+    transport.close();
+    if (linkCache != null) {
+      linkResults.save(Paths.get(linkCache));
+    }
+  }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.jsoup.internal.StringUtil;
+import org.jsoup.nodes.Entities;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts links in a single pass over the page source without building a DOM.
+ * The tokenizer follows the HTML rules that matter for links: tag and attribute names are case-insensitive,
+ * comments, declarations and the contents of raw text elements (like script and style) are skipped,
+ * character references in attribute values are decoded. Links are resolved the same way Jsoup does,
+ * against the first base element of the page if there is one, wherever it appears in the page.
+ */
+class StreamingLinkExtractor implements LinkExtractor {
+
+  private static final Map<String, String[]> LINK_ATTRIBUTES = new HashMap<>();
+  static {
+    LINK_ATTRIBUTES.put("a", new String[] {"href"});
+    LINK_ATTRIBUTES.put("area", new String[] {"href"});
+    LINK_ATTRIBUTES.put("link", new String[] {"href"});
+    LINK_ATTRIBUTES.put("img", new String[] {"src"});
+    LINK_ATTRIBUTES.put("iframe", new String[] {"src"});
+    LINK_ATTRIBUTES.put("audio", new String[] {"src"});
+    LINK_ATTRIBUTES.put("embed", new String[] {"src"});
+    LINK_ATTRIBUTES.put("track", new String[] {"src"});
+    LINK_ATTRIBUTES.put("script", new String[] {"src"});
+    LINK_ATTRIBUTES.put("video", new String[] {"src", "poster"});
+    LINK_ATTRIBUTES.put("source", new String[] {"src", "srcset"});
+    LINK_ATTRIBUTES.put("input", new String[] {"src", "formaction"});
+    LINK_ATTRIBUTES.put("object", new String[] {"data"});
+    LINK_ATTRIBUTES.put("form", new String[] {"action"});
+    LINK_ATTRIBUTES.put("button", new String[] {"formaction"});
+  }
+
+  private static final Set<String> WANTED_ATTRIBUTES = Set.of("href", "src", "poster", "srcset", "data", "action", "formaction");
+
+  private static final Set<String> RAW_TEXT_ELEMENTS = Set.of(
+    "script", "style", "xmp", "iframe", "noembed", "noframes", "textarea", "title");
+
+  @Override
+  public Set<String> extract(Reader page, String pageUrl) throws IOException {
+    Source in = new Source(page);
+    List<String> links = new ArrayList<>();
+    String base = null;
+    int svgDepth = 0;
+
+    int c;
+    while ((c = in.read()) != -1) {
+      if (c != '<') {
+        continue;
+      }
+      c = in.read();
+      if (c == '!') {
+        skipMarkupDeclaration(in);
+      } else if (c == '?') {
+        skipUntil(in, '>');
+      } else if (c == '/') {
+        if ("svg".equals(readEndTag(in)) && svgDepth > 0) {
+          svgDepth--;
+        }
+      } else if (isLetter(c)) {
+        StartTag tag = readStartTag(in, c);
+        if (tag == null) {
+          // an unfinished tag at the end of the page is dropped
+          break;
+        }
+        String name = tag.name;
+        if (name.equals("svg")) {
+          svgDepth++;
+        } else if (name.equals("image") && svgDepth == 0) {
+          name = "img";
+        }
+        if (name.equals("base")) {
+          String href = tag.attributes.get("href");
+          if (base == null && href != null) {
+            String resolved = StringUtil.resolve(pageUrl, href);
+            if (resolved.length() > 0) {
+              base = resolved;
+            }
+          }
+          continue;
+        }
+        String[] attributes = LINK_ATTRIBUTES.get(name);
+        if (attributes != null) {
+          for (String attribute : attributes) {
+            String value = tag.attributes.get(attribute);
+            if (value != null) {
+              links.add(value);
+            }
+          }
+        }
+        if (name.equals("plaintext")) {
+          break;
+        }
+        if (RAW_TEXT_ELEMENTS.contains(name)) {
+          skipRawText(in, name);
+        }
+      } else if (c != -1) {
+        // not a tag, but the character may start one
+        in.unread();
+      }
+    }
+
+    String baseUrl = base != null ? base : pageUrl;
+    Set<String> result = new HashSet<>();
+    for (String link : links) {
+      String resolved = StringUtil.resolve(baseUrl, link);
+      if (resolved.length() > 0) {
+        result.add(resolved);
+      }
+    }
+    return result;
+  }
+
+  private static class StartTag {
+    private final String name;
+    private final Map<String, String> attributes = new HashMap<>();
+
+    StartTag(String name) {
+      this.name = name;
+    }
+  }
+
+  // reads a start tag after its first letter, returns null if the page ends before the tag does
+  private static StartTag readStartTag(Source in, int first) throws IOException {
+    StringBuilder name = new StringBuilder().append(toLowerCase(first));
+    int c;
+    while (true) {
+      c = in.read();
+      if (c == -1) {
+        return null;
+      }
+      if (isWhitespace(c) || c == '/' || c == '>') {
+        break;
+      }
+      name.append(toLowerCase(c));
+    }
+    StartTag tag = new StartTag(name.toString());
+
+    while (c != '>') {
+      if (isWhitespace(c) || c == '/') {
+        c = in.read();
+        if (c == -1) {
+          return null;
+        }
+        continue;
+      }
+
+      StringBuilder attributeName = new StringBuilder();
+      do {
+        attributeName.append(toLowerCase(c));
+        c = in.read();
+        if (c == -1) {
+          return null;
+        }
+      } while (!isWhitespace(c) && c != '/' && c != '>' && c != '=');
+      while (isWhitespace(c)) {
+        c = in.read();
+      }
+      if (c == -1) {
+        return null;
+      }
+
+      String attribute = attributeName.toString();
+      boolean wanted = WANTED_ATTRIBUTES.contains(attribute);
+      String value = "";
+      if (c == '=') {
+        do {
+          c = in.read();
+        } while (isWhitespace(c));
+        if (c == -1) {
+          return null;
+        }
+        StringBuilder raw = wanted ? new StringBuilder() : null;
+        if (c == '"' || c == '\'') {
+          int quote = c;
+          while ((c = in.read()) != quote) {
+            if (c == -1) {
+              return null;
+            }
+            if (raw != null) {
+              raw.append((char) c);
+            }
+          }
+          c = in.read();
+          if (c == -1) {
+            return null;
+          }
+        } else if (c != '>') {
+          do {
+            if (raw != null) {
+              raw.append((char) c);
+            }
+            c = in.read();
+            if (c == -1) {
+              return null;
+            }
+          } while (!isWhitespace(c) && c != '>');
+        }
+        if (raw != null) {
+          value = decodeCharacterReferences(raw);
+        }
+      }
+      if (wanted) {
+        // the first occurrence of an attribute wins, as the HTML spec says; older jsoup versions, 1.12.1 among them,
+        // keep the last one, so the extractors may disagree on a tag with a duplicated link attribute
+        tag.attributes.putIfAbsent(attribute, value);
+      }
+    }
+    return tag;
+  }
+
+  private static String readEndTag(Source in) throws IOException {
+    StringBuilder name = new StringBuilder();
+    int c = in.read();
+    while (c != -1 && isLetterOrDigit(c)) {
+      name.append(toLowerCase(c));
+      c = in.read();
+    }
+    while (c != -1 && c != '>') {
+      c = in.read();
+    }
+    return name.toString();
+  }
+
+  private static void skipMarkupDeclaration(Source in) throws IOException {
+    int c = in.read();
+    if (c == '-') {
+      c = in.read();
+      if (c == '-') {
+        skipComment(in);
+        return;
+      }
+    }
+    while (c != -1 && c != '>') {
+      c = in.read();
+    }
+  }
+
+  private static void skipComment(Source in) throws IOException {
+    // the opening dashes count as well, so that <!--> and <!---> are complete comments
+    int dashes = 2;
+    int c;
+    while ((c = in.read()) != -1) {
+      if (c == '-') {
+        dashes++;
+      } else if (c == '>' && dashes >= 2) {
+        return;
+      } else {
+        dashes = 0;
+      }
+    }
+  }
+
+  private static void skipUntil(Source in, char end) throws IOException {
+    int c;
+    do {
+      c = in.read();
+    } while (c != -1 && c != end);
+  }
+
+  // skips the contents of an element like script up to its end tag
+  private static void skipRawText(Source in, String name) throws IOException {
+    int c;
+    while ((c = in.read()) != -1) {
+      if (c != '<') {
+        continue;
+      }
+      c = in.read();
+      if (c != '/') {
+        if (c != -1) {
+          in.unread();
+        }
+        continue;
+      }
+      int matched = 0;
+      while (matched < name.length()) {
+        c = in.read();
+        if (c == -1 || toLowerCase(c) != name.charAt(matched)) {
+          break;
+        }
+        matched++;
+      }
+      if (matched == name.length()) {
+        c = in.read();
+        if (c == -1 || isWhitespace(c) || c == '/' || c == '>') {
+          if (c != '>') {
+            skipUntil(in, '>');
+          }
+          return;
+        }
+      }
+      if (c != -1) {
+        in.unread();
+      }
+    }
+  }
+
+  private static String decodeCharacterReferences(CharSequence raw) {
+    int amp = indexOf(raw, '&', 0);
+    if (amp < 0) {
+      return raw.toString();
+    }
+    StringBuilder result = new StringBuilder(raw.length());
+    int i = 0;
+    while (amp >= 0) {
+      result.append(raw, i, amp);
+      i = amp + 1;
+      if (i < raw.length() && raw.charAt(i) == '#') {
+        int start = i + 1;
+        boolean hex = start < raw.length() && (raw.charAt(start) == 'x' || raw.charAt(start) == 'X');
+        int digitsStart = hex ? start + 1 : start;
+        int end = digitsStart;
+        while (end < raw.length() && (hex ? Character.digit(raw.charAt(end), 16) >= 0 : isDigit(raw.charAt(end)))) {
+          end++;
+        }
+        if (end > digitsStart) {
+          int codePoint;
+          try {
+            codePoint = Integer.parseInt(raw.subSequence(digitsStart, end).toString(), hex ? 16 : 10);
+          } catch (NumberFormatException e) {
+            codePoint = 0xFFFD;
+          }
+          if (!Character.isValidCodePoint(codePoint) || codePoint == 0) {
+            codePoint = 0xFFFD;
+          }
+          result.appendCodePoint(codePoint);
+          i = end < raw.length() && raw.charAt(end) == ';' ? end + 1 : end;
+        } else {
+          result.append('&');
+        }
+      } else {
+        int end = i;
+        while (end < raw.length() && isLetterOrDigit(raw.charAt(end))) {
+          end++;
+        }
+        String entity = raw.subSequence(i, end).toString();
+        boolean terminated = end < raw.length() && raw.charAt(end) == ';';
+        if (terminated && Entities.isNamedEntity(entity)) {
+          result.append(Entities.getByName(entity));
+          i = end + 1;
+        } else if (!terminated && Entities.isBaseNamedEntity(entity) && (end >= raw.length() || raw.charAt(end) != '=')) {
+          result.append(Entities.getByName(entity));
+          i = end;
+        } else {
+          result.append('&');
+        }
+      }
+      amp = indexOf(raw, '&', i);
+    }
+    result.append(raw, i, raw.length());
+    return result.toString();
+  }
+
+  private static int indexOf(CharSequence s, char c, int from) {
+    for (int i = from; i < s.length(); i++) {
+      if (s.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+  }
+
+  private static boolean isLetter(int c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isLetterOrDigit(int c) {
+    return isLetter(c) || isDigit(c);
+  }
+
+  private static char toLowerCase(int c) {
+    return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : (char) c;
+  }
+
+  // a buffered reader that can step back by one character
+  private static class Source {
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    Source(Reader reader) {
+      this.reader = reader;
+    }
+
+    int read() throws IOException {
+      if (position == limit) {
+        int count = reader.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+          position = limit = 0;
+          return -1;
+        }
+        position = 0;
+        limit = count;
+      }
+      return buffer[position++];
+    }
+
+    // must only follow a read that returned a character
+    void unread() {
+      position--;
+    }
+  }
+}
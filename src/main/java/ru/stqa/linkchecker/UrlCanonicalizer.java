@@ -0,0 +1,233 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Brings links to a canonical form before they get to the frontier, so that different spellings
+ * of the same resource are requested once. Scheme and host are lowercased, default ports are dropped,
+ * dot-segments are removed and percent-encoding is normalized. Depending on the settings fragments are stripped,
+ * tracking query parameters are removed and the remaining ones are sorted.
+ * Links that are not hierarchical, like mailto: or javascript:, are left as they are.
+ */
+class UrlCanonicalizer {
+
+  private final boolean stripFragments;
+  private final boolean sortQueryParameters;
+  private final List<String> ignoredQueryParameters;
+  private final Set<String> caseInsensitiveHosts;
+
+  UrlCanonicalizer(ScanSettings settings) {
+    this.stripFragments = settings.isStripFragments();
+    this.sortQueryParameters = settings.isSortQueryParameters();
+    this.ignoredQueryParameters = settings.getIgnoredQueryParameters();
+    this.caseInsensitiveHosts = settings.getCaseInsensitiveHosts().stream()
+      .map(host -> host.toLowerCase(Locale.ROOT))
+      .collect(Collectors.toSet());
+  }
+
+  /**
+   * Canonicalizes all links of a page.
+   *
+   * @param anchors receives the canonical links that pointed to a fragment, with the fragment kept
+   */
+  Set<String> canonicalize(Set<String> links, Set<String> anchors) {
+    Set<String> result = new HashSet<>();
+    for (String link : links) {
+      String canonical = canonicalize(link);
+      result.add(canonical);
+      int hash = link.indexOf('#');
+      if (stripFragments && hash >= 0 && hash < link.length() - 1) {
+        anchors.add(canonical + link.substring(hash));
+      }
+    }
+    return result;
+  }
+
+  String canonicalize(String url) {
+    int colon = url.indexOf(':');
+    if (colon <= 0 || !url.startsWith("//", colon + 1) || url.length() == colon + 3) {
+      return url;
+    }
+    String scheme = url.substring(0, colon).toLowerCase(Locale.ROOT);
+
+    int hash = url.indexOf('#');
+    String fragment = hash < 0 ? null : url.substring(hash + 1);
+    String rest = hash < 0 ? url : url.substring(0, hash);
+    int question = rest.indexOf('?');
+    String query = question < 0 ? null : rest.substring(question + 1);
+    rest = question < 0 ? rest : rest.substring(0, question);
+
+    int authorityStart = colon + 3;
+    int slash = rest.indexOf('/', authorityStart);
+    String authority = slash < 0 ? rest.substring(authorityStart) : rest.substring(authorityStart, slash);
+    String path = slash < 0 ? "" : rest.substring(slash);
+
+    int at = authority.lastIndexOf('@');
+    String userInfo = at < 0 ? null : authority.substring(0, at);
+    String hostPort = authority.substring(at + 1);
+    int portColon = hostPort.lastIndexOf(':');
+    if (portColon < hostPort.lastIndexOf(']')) {
+      portColon = -1;
+    }
+    String host = (portColon < 0 ? hostPort : hostPort.substring(0, portColon)).toLowerCase(Locale.ROOT);
+    String port = portColon < 0 ? "" : hostPort.substring(portColon + 1);
+    if (port.equals(defaultPort(scheme))) {
+      port = "";
+    }
+
+    path = removeDotSegments(normalizePercentEncoding(path));
+    if (path.isEmpty()) {
+      path = "/";
+    }
+    if (caseInsensitiveHosts.contains(host)) {
+      path = path.toLowerCase(Locale.ROOT);
+    }
+    if (query != null) {
+      query = normalizeQuery(normalizePercentEncoding(query));
+    }
+
+    StringBuilder result = new StringBuilder(url.length());
+    result.append(scheme).append("://");
+    if (userInfo != null) {
+      result.append(userInfo).append('@');
+    }
+    result.append(host);
+    if (!port.isEmpty()) {
+      result.append(':').append(port);
+    }
+    result.append(path);
+    if (query != null) {
+      result.append('?').append(query);
+    }
+    if (fragment != null && !stripFragments) {
+      result.append('#').append(fragment);
+    }
+    return result.toString();
+  }
+
+  private static String defaultPort(String scheme) {
+    switch (scheme) {
+      case "http":
+        return "80";
+      case "https":
+        return "443";
+      default:
+        return null;
+    }
+  }
+
+  // returns null when all the parameters were removed, so that the question mark goes too
+  private String normalizeQuery(String query) {
+    if (!sortQueryParameters && ignoredQueryParameters.isEmpty()) {
+      return query;
+    }
+    List<String> parameters = new ArrayList<>(Arrays.asList(query.split("&", -1)));
+    parameters.removeIf(parameter -> isIgnored(nameOf(parameter)));
+    if (parameters.isEmpty()) {
+      return null;
+    }
+    if (sortQueryParameters) {
+      parameters.sort(Comparator.comparing(UrlCanonicalizer::nameOf));
+    }
+    return String.join("&", parameters);
+  }
+
+  private boolean isIgnored(String name) {
+    for (String ignored : ignoredQueryParameters) {
+      if (ignored.endsWith("*") ? name.startsWith(ignored.substring(0, ignored.length() - 1)) : name.equals(ignored)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String nameOf(String parameter) {
+    int eq = parameter.indexOf('=');
+    return eq < 0 ? parameter : parameter.substring(0, eq);
+  }
+
+  /**
+   * Decodes percent-encoded unreserved characters and uppercases the hex digits of the other escapes.
+   */
+  static String normalizePercentEncoding(String s) {
+    int percent = s.indexOf('%');
+    if (percent < 0) {
+      return s;
+    }
+    StringBuilder result = new StringBuilder(s.length());
+    result.append(s, 0, percent);
+    for (int i = percent; i < s.length(); i++) {
+      char c = s.charAt(i);
+      int high = c == '%' && i + 2 < s.length() ? Character.digit(s.charAt(i + 1), 16) : -1;
+      int low = high >= 0 ? Character.digit(s.charAt(i + 2), 16) : -1;
+      if (low < 0) {
+        result.append(c);
+        continue;
+      }
+      char decoded = (char) (high * 16 + low);
+      if (isUnreserved(decoded)) {
+        result.append(decoded);
+      } else {
+        result.append('%')
+          .append(Character.toUpperCase(s.charAt(i + 1)))
+          .append(Character.toUpperCase(s.charAt(i + 2)));
+      }
+      i += 2;
+    }
+    return result.toString();
+  }
+
+  private static boolean isUnreserved(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+      || c == '-' || c == '.' || c == '_' || c == '~';
+  }
+
+  /**
+   * Resolves "." and ".." segments of an absolute path as described in RFC 3986, section 5.2.4.
+   */
+  static String removeDotSegments(String path) {
+    if (!path.contains("/.")) {
+      return path;
+    }
+    String[] segments = path.substring(1).split("/", -1);
+    List<String> result = new ArrayList<>(segments.length);
+    for (int i = 0; i < segments.length; i++) {
+      String segment = segments[i];
+      if (segment.equals(".") || segment.equals("..")) {
+        if (segment.equals("..") && !result.isEmpty()) {
+          result.remove(result.size() - 1);
+        }
+        if (i == segments.length - 1) {
+          // a path ending with a dot-segment points to a directory
+          result.add("");
+        }
+      } else {
+        result.add(segment);
+      }
+    }
+    return "/" + String.join("/", result);
+  }
+}
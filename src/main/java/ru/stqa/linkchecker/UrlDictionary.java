@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.util.Arrays;
+
+/**
+ * Assigns a dense int id to every URL seen in a scan and keeps a single copy of its string, so that links
+ * can be stored as ids. A URL keeps its id for the whole session, ids are never reused.
+ */
+class UrlDictionary {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  // ids are looked up without a lock, an id always reaches the reader through a synchronized hand-off
+  // that happened after the URL was stored
+  private volatile String[] urls = new String[INITIAL_CAPACITY];
+  // open-addressed table of id + 1, zero marks an empty slot
+  private int[] table = new int[INITIAL_CAPACITY * 2];
+  private int size;
+
+  /**
+   * Returns the id of the URL, assigning the next one if the URL is new.
+   */
+  synchronized int intern(String url) {
+    int mask = table.length - 1;
+    for (int i = spread(url.hashCode()) & mask; ; i = (i + 1) & mask) {
+      int slot = table[i];
+      if (slot == 0) {
+        int id = size++;
+        if (id == urls.length) {
+          urls = Arrays.copyOf(urls, id * 2);
+        }
+        urls[id] = url;
+        table[i] = id + 1;
+        if (size > table.length / 2) {
+          rehash();
+        }
+        return id;
+      }
+      if (urls[slot - 1].equals(url)) {
+        return slot - 1;
+      }
+    }
+  }
+
+  /**
+   * Returns the id of the URL or -1 if the URL was never interned.
+   */
+  synchronized int idOf(Object url) {
+    int mask = table.length - 1;
+    for (int i = spread(url.hashCode()) & mask; ; i = (i + 1) & mask) {
+      int slot = table[i];
+      if (slot == 0) {
+        return -1;
+      }
+      if (urls[slot - 1].equals(url)) {
+        return slot - 1;
+      }
+    }
+  }
+
+  String url(int id) {
+    return urls[id];
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  private void rehash() {
+    int[] grown = new int[table.length * 2];
+    int mask = grown.length - 1;
+    for (int slot : table) {
+      if (slot != 0) {
+        int i = spread(urls[slot - 1].hashCode()) & mask;
+        while (grown[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        grown[i] = slot;
+      }
+    }
+    table = grown;
+  }
+
+  private static int spread(int hash) {
+    int h = hash * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+}
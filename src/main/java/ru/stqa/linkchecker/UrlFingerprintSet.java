@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A concurrent set of URLs that stores 64-bit fingerprints instead of strings.
+ * Fingerprints live in open-addressed primitive arrays split into segments. It is not lock-free: adds and
+ * lookups hold the read lock of their segment, which they share with each other, and claim slots with CAS,
+ * while a segment that grows takes its write lock and holds everybody else off until the table is copied.
+ */
+class UrlFingerprintSet {
+
+  private static final int SEGMENT_BITS = 4;
+  private static final int INITIAL_SEGMENT_CAPACITY = 1024;
+
+  private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+  UrlFingerprintSet() {
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  /**
+   * Adds a URL to the set.
+   *
+   * @return true if the URL was not seen before
+   */
+  boolean add(String url) {
+    long fingerprint = fingerprint(url);
+    return segmentFor(fingerprint).add(fingerprint);
+  }
+
+  boolean contains(String url) {
+    long fingerprint = fingerprint(url);
+    return segmentFor(fingerprint).contains(fingerprint);
+  }
+
+  int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.count.get();
+    }
+    return size;
+  }
+
+  private Segment segmentFor(long fingerprint) {
+    return segments[(int) (fingerprint >>> (64 - SEGMENT_BITS))];
+  }
+
+  // FNV-1a over UTF-16 chars followed by the MurmurHash3 finalizer, zero is reserved for empty slots
+  static long fingerprint(CharSequence url) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < url.length(); i++) {
+      h ^= url.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h == 0 ? 1 : h;
+  }
+
+  private static class Segment {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicInteger count = new AtomicInteger();
+    private volatile AtomicLongArray table = new AtomicLongArray(INITIAL_SEGMENT_CAPACITY);
+
+    boolean add(long fingerprint) {
+      boolean added;
+      lock.readLock().lock();
+      try {
+        added = insert(table, fingerprint);
+      } finally {
+        lock.readLock().unlock();
+      }
+      if (added && count.incrementAndGet() > table.length() / 2) {
+        grow();
+      }
+      return added;
+    }
+
+    boolean contains(long fingerprint) {
+      lock.readLock().lock();
+      try {
+        AtomicLongArray t = table;
+        int mask = t.length() - 1;
+        for (int i = (int) fingerprint & mask; ; i = (i + 1) & mask) {
+          long value = t.get(i);
+          if (value == fingerprint) {
+            return true;
+          }
+          if (value == 0) {
+            return false;
+          }
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    private void grow() {
+      lock.writeLock().lock();
+      try {
+        AtomicLongArray old = table;
+        if (count.get() <= old.length() / 2) {
+          return;
+        }
+        AtomicLongArray grown = new AtomicLongArray(old.length() * 2);
+        for (int i = 0; i < old.length(); i++) {
+          long value = old.get(i);
+          if (value != 0) {
+            insert(grown, value);
+          }
+        }
+        table = grown;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    private static boolean insert(AtomicLongArray t, long fingerprint) {
+      int mask = t.length() - 1;
+      int i = (int) fingerprint & mask;
+      while (true) {
+        long value = t.get(i);
+        if (value == fingerprint) {
+          return false;
+        }
+        if (value == 0) {
+          if (t.compareAndSet(i, 0, fingerprint)) {
+            return true;
+          }
+          // somebody took the slot, look at it again
+          continue;
+        }
+        i = (i + 1) & mask;
+      }
+    }
+  }
+}
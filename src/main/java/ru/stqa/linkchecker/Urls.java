@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.net.URI;
+import java.util.Optional;
+
+class Urls {
+
+  private Urls() {
+  }
+
+  /**
+   * Returns scheme, host and port of a URL, the unit that per-host limits and caches work with.
+   */
+  static Optional<String> origin(String url) {
+    try {
+      URI uri = URI.create(url);
+      if (uri.getHost() == null) {
+        return Optional.empty();
+      }
+      return Optional.of(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort());
+    } catch (IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+}
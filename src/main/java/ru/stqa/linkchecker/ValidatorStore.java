@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Keeps ETag and Last-Modified validators of scanned pages together with the links and anchors found on them,
+ * so that the next scan can send conditional requests and reuse the links of pages that did not change.
+ */
+class ValidatorStore {
+
+  // version 1 had no anchors
+  private static final int VERSION = 2;
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  static class Entry {
+    private final String etag;
+    private final String lastModified;
+    private final int httpStatus;
+    private final String contentType;
+    private final Set<String> links;
+    private final Set<String> anchors;
+
+    Entry(String etag, String lastModified, int httpStatus, String contentType, Set<String> links,
+          Set<String> anchors) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.httpStatus = httpStatus;
+      this.contentType = contentType;
+      this.links = links;
+      this.anchors = anchors;
+    }
+
+    Map<String, String> conditionalHeaders() {
+      Map<String, String> headers = new HashMap<>();
+      if (etag != null) {
+        headers.put("If-None-Match", etag);
+      }
+      if (lastModified != null) {
+        headers.put("If-Modified-Since", lastModified);
+      }
+      return headers;
+    }
+
+    PageInfo toPageInfo(String url) {
+      return PageInfo.done(url).httpStatus(httpStatus).contentType(contentType).links(links).anchors(anchors).build();
+    }
+  }
+
+  /**
+   * Loads validators saved by a previous scan, an absent file gives an empty store.
+   */
+  static ValidatorStore load(Path file) throws IOException {
+    ValidatorStore store = new ValidatorStore();
+    if (!Files.exists(file)) {
+      return store;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      int version = in.readInt();
+      if (version != 1 && version != VERSION) {
+        return store;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String url = BinaryStrings.read(in);
+        String etag = BinaryStrings.read(in);
+        String lastModified = BinaryStrings.read(in);
+        int httpStatus = in.readInt();
+        String contentType = BinaryStrings.read(in);
+        int linkCount = in.readInt();
+        Set<String> links = new HashSet<>(linkCount * 2);
+        for (int j = 0; j < linkCount; j++) {
+          links.add(BinaryStrings.read(in));
+        }
+        Set<String> anchors = new HashSet<>();
+        if (version > 1) {
+          int anchorCount = in.readInt();
+          for (int j = 0; j < anchorCount; j++) {
+            anchors.add(BinaryStrings.read(in));
+          }
+        }
+        store.entries.put(url, new Entry(etag, lastModified, httpStatus, contentType, links, anchors));
+      }
+    }
+    return store;
+  }
+
+  Entry get(String url) {
+    return entries.get(url);
+  }
+
+  /**
+   * Remembers the validators of a freshly downloaded page, pages without validators are forgotten.
+   */
+  void update(String url, FetchResponse response, PageInfo pageInfo) {
+    String etag = response.getHeaders("ETag").stream().findFirst().orElse(null);
+    String lastModified = response.getHeaders("Last-Modified").stream().findFirst().orElse(null);
+    if (response.getStatusCode() != 200 || (etag == null && lastModified == null)) {
+      entries.remove(url);
+      return;
+    }
+    entries.put(url, new Entry(etag, lastModified, pageInfo.getHttpStatus(), pageInfo.getContentType(), pageInfo.getLinks(),
+      pageInfo.getAnchors()));
+  }
+
+  /**
+   * Saves the validators of the URLs that pass the filter, replacing the file atomically.
+   */
+  void save(Path file, Predicate<String> keep) throws IOException {
+    Map<String, Entry> kept = new HashMap<>();
+    entries.forEach((url, entry) -> {
+      if (keep.test(url)) {
+        kept.put(url, entry);
+      }
+    });
+    Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      out.writeInt(VERSION);
+      out.writeInt(kept.size());
+      for (Map.Entry<String, Entry> e : kept.entrySet()) {
+        Entry entry = e.getValue();
+        BinaryStrings.write(out, e.getKey());
+        BinaryStrings.write(out, entry.etag);
+        BinaryStrings.write(out, entry.lastModified);
+        out.writeInt(entry.httpStatus);
+        BinaryStrings.write(out, entry.contentType);
+        out.writeInt(entry.links.size());
+        for (String link : entry.links) {
+          BinaryStrings.write(out, link);
+        }
+        out.writeInt(entry.anchors.size());
+        for (String anchor : entry.anchors) {
+          BinaryStrings.write(out, anchor);
+        }
+      }
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker.fx;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collapses the pages of a link graph into nodes of the chosen {@link GraphDetail}: hosts, directories or pages.
+ * Links between pages of two nodes make a single edge that counts them. A collapsed node can be expanded,
+ * then its pages are shown one level finer. Changes are collected until {@link #flush(Sink)}, so the view
+ * gets at most one update per node and edge for a batch of pages.
+ */
+class GraphAggregator {
+
+  /**
+   * Receives the changes of the aggregated graph.
+   */
+  interface Sink {
+
+    /**
+     * @param key the URL of a page, the origin of a host or the URL of a directory ending with a slash
+     * @param group true if the node stands for a host or a directory
+     * @param urls the number of URLs in the node
+     * @param added true if the node is new, otherwise its size has changed
+     */
+    void node(String key, boolean group, int urls, boolean added);
+
+    /**
+     * @param links the number of links between the pages of the nodes
+     * @param added true if the edge is new, otherwise its count has changed
+     */
+    void edge(String from, String to, int links, boolean added);
+  }
+
+  private GraphDetail detail;
+  private final Set<String> expanded = new HashSet<>();
+  private final Map<String, GraphNode> nodes = new HashMap<>();
+  private final List<GraphNode> nodesById = new ArrayList<>();
+  private final Map<Long, int[]> edges = new HashMap<>();
+  private final Set<String> urls = new HashSet<>();
+  private final Set<String> pages = new HashSet<>();
+  private final Set<GraphNode> changedNodes = new LinkedHashSet<>();
+  private final Set<Long> changedEdges = new LinkedHashSet<>();
+  private final Set<Long> addedEdges = new HashSet<>();
+
+  GraphAggregator(GraphDetail detail) {
+    this.detail = detail;
+  }
+
+  GraphDetail getDetail() {
+    return detail;
+  }
+
+  /**
+   * Changes the level of detail, nodes that were expanded get collapsed again. The caller has to add the pages anew.
+   */
+  void setDetail(GraphDetail detail) {
+    this.detail = detail;
+    expanded.clear();
+    clear();
+  }
+
+  /**
+   * Shows the pages of a host or a directory one level finer. The caller has to add the pages anew.
+   *
+   * @return false if the key is not a collapsed node
+   */
+  boolean expand(String key) {
+    GraphNode node = nodes.get(key);
+    if (node == null || !node.group || !expanded.add(key)) {
+      return false;
+    }
+    clear();
+    return true;
+  }
+
+  boolean isGroup(String key) {
+    GraphNode node = nodes.get(key);
+    return node != null && node.group;
+  }
+
+  int nodeCount() {
+    return nodes.size();
+  }
+
+  /**
+   * Forgets all the pages, the settings of detail and the expanded nodes are kept.
+   */
+  void clear() {
+    nodes.clear();
+    nodesById.clear();
+    edges.clear();
+    urls.clear();
+    pages.clear();
+    changedNodes.clear();
+    changedEdges.clear();
+    addedEdges.clear();
+  }
+
+  /**
+   * Returns the key of the node that shows the URL.
+   */
+  String nodeOf(String url) {
+    int schemeEnd = url.indexOf("://");
+    if (schemeEnd < 0 || detail == GraphDetail.PAGES) {
+      return url;
+    }
+    int pathStart = url.indexOf('/', schemeEnd + 3);
+    String host = pathStart < 0 ? url : url.substring(0, pathStart);
+    if (detail == GraphDetail.HOSTS && !expanded.contains(host)) {
+      return host;
+    }
+    if (pathStart < 0) {
+      return host + "/";
+    }
+    int pathEnd = url.length();
+    for (int i = pathStart; i < url.length(); i++) {
+      if (url.charAt(i) == '?' || url.charAt(i) == '#') {
+        pathEnd = i;
+        break;
+      }
+    }
+    String directory = url.substring(0, url.lastIndexOf('/', pathEnd - 1) + 1);
+    return expanded.contains(directory) ? url : directory;
+  }
+
+  // hosts have no path and directories end with a slash, a page URL is returned only when it is not collapsed
+  private boolean isGroupKey(String key) {
+    int schemeEnd = key.indexOf("://");
+    return detail != GraphDetail.PAGES && schemeEnd >= 0 && !expanded.contains(key)
+      && (key.endsWith("/") || key.indexOf('/', schemeEnd + 3) < 0);
+  }
+
+  /**
+   * Adds a URL that is known before its page is scanned, like the start URL.
+   */
+  void addUrl(String url) {
+    node(url);
+  }
+
+  /**
+   * Adds a scanned page with its links, a page that has been added already is ignored.
+   */
+  void addPage(String url, Collection<String> links) {
+    GraphNode from = node(url);
+    if (!pages.add(url)) {
+      return;
+    }
+    for (String link : links) {
+      GraphNode to = node(link);
+      if (to == from) {
+        continue;
+      }
+      long key = (long) from.id << 32 | to.id;
+      int[] count = edges.get(key);
+      if (count == null) {
+        edges.put(key, count = new int[1]);
+        addedEdges.add(key);
+      }
+      count[0]++;
+      changedEdges.add(key);
+    }
+  }
+
+  /**
+   * Passes the nodes and edges that were added or changed since the previous flush to the sink.
+   */
+  void flush(Sink sink) {
+    for (GraphNode node : changedNodes) {
+      sink.node(node.key, node.group, node.urls, node.added);
+      node.added = false;
+    }
+    for (long key : changedEdges) {
+      sink.edge(nodesById.get((int) (key >>> 32)).key, nodesById.get((int) key).key, edges.get(key)[0],
+        addedEdges.contains(key));
+    }
+    changedNodes.clear();
+    changedEdges.clear();
+    addedEdges.clear();
+  }
+
+  private GraphNode node(String url) {
+    String key = nodeOf(url);
+    GraphNode node = nodes.get(key);
+    if (node == null) {
+      node = new GraphNode(nodesById.size(), key, isGroupKey(key));
+      nodes.put(key, node);
+      nodesById.add(node);
+      changedNodes.add(node);
+    }
+    if (urls.add(url)) {
+      node.urls++;
+      if (node.group) {
+        changedNodes.add(node);
+      }
+    }
+    return node;
+  }
+
+  private static class GraphNode {
+    private final int id;
+    private final String key;
+    private final boolean group;
+    private int urls;
+    private boolean added = true;
+
+    GraphNode(int id, String key, boolean group) {
+      this.id = id;
+      this.key = key;
+      this.group = group;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker.fx;
+
+/**
+ * How much of the link graph the graph view shows, from the coarsest to the finest level.
+ */
+public enum GraphDetail {
+  /** a node per host */
+  HOSTS,
+  /** a node per directory */
+  DIRECTORIES,
+  /** a node per page */
+  PAGES
+}
@@ -126,6 +126,8 @@ public class LinkCheckerController {
           if (filtered.size() > 0) {
             showPageInfoProperty(filtered.get(0));
           }
+          // hosts and directories open up on a click, nothing happens to pages
+          model.expandGraphNode(id);
         }
       });
       fromViewer.addAttributeSink(model.getGraph());
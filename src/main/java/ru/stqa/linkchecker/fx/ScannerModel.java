@@ -17,8 +17,11 @@
 package ru.stqa.linkchecker.fx;
 
 import com.google.gson.Gson;
+import javafx.application.Platform;
 import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
@@ -27,6 +30,8 @@ import org.graphstream.graph.Edge;
 import org.graphstream.graph.Graph;
 import org.graphstream.graph.Node;
 import org.graphstream.graph.implementations.SingleGraph;
+import ru.stqa.linkchecker.OverflowPolicy;
+import ru.stqa.linkchecker.PageInfo;
 import ru.stqa.linkchecker.ScanSession;
 import ru.stqa.linkchecker.ScanSettings;
 import ru.stqa.linkchecker.ScanStatus;
@@ -35,7 +40,16 @@ import java.io.*;
 import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class ScannerModel {
@@ -45,9 +59,27 @@ public class ScannerModel {
 
   private StringProperty startUrl = new SimpleStringProperty("http://localhost/");
   private IntegerProperty threadCount = new SimpleIntegerProperty(10);
+  private IntegerProperty maxRefreshRate = new SimpleIntegerProperty(Integer.getInteger("ui.maxRefreshRate", 20));
   private ObservableList<PageInfoModel> pages = FXCollections.observableArrayList();
+  // pages that are done but not shown yet, they are added to the table in one go at most maxRefreshRate times a second
+  private ConcurrentLinkedQueue<PageInfoModel> pendingPages = new ConcurrentLinkedQueue<>();
+  private AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+  private ObjectProperty<GraphDetail> graphDetail =
+    new SimpleObjectProperty<>(GraphDetail.valueOf(System.getProperty("ui.graphDetail", "PAGES")));
+  // beyond this number of nodes the graph switches from pages to directories
+  private int maxGraphNodes = Integer.getInteger("ui.maxGraphNodes", 2000);
 
   private ScanSession session;
+  private String graphStartUrl;
+  private GraphAggregator aggregator = new GraphAggregator(graphDetail.get());
+  private GraphUpdater graphSink = new GraphUpdater();
+  // the graph is changed on this thread only, so the viewer gets the changes of a batch of pages at once
+  private ExecutorService graphUpdater = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "graph-updater");
+    thread.setDaemon(true);
+    return thread;
+  });
 
   private Graph graph;
 
@@ -56,6 +88,12 @@ public class ScannerModel {
   public ScannerModel() {
     graph = new SingleGraph("embedded");
     graph.addAttribute("ui.stylesheet", loadStyleSheet());
+    graphDetail.addListener((observable, oldValue, newValue) -> graphUpdater.execute(() -> {
+      if (aggregator.getDetail() != newValue) {
+        aggregator.setDetail(newValue);
+        rebuildGraph();
+      }
+    }));
   }
 
   private String loadStyleSheet() {
@@ -75,6 +113,20 @@ public class ScannerModel {
     return threadCount;
   }
 
+  /**
+   * The number of times per second the list of pages may change during a scan.
+   */
+  public IntegerProperty maxRefreshRateProperty() {
+    return maxRefreshRate;
+  }
+
+  /**
+   * The level of detail of the graph, host and directory nodes can be expanded with {@link #expandGraphNode(String)}.
+   */
+  public ObjectProperty<GraphDetail> graphDetailProperty() {
+    return graphDetail;
+  }
+
   public ObservableList<PageInfoModel> getPages() {
     return pages;
   }
@@ -107,40 +159,121 @@ public class ScannerModel {
   public void reset() {
     saved = false;
     savedTo = null;
+    pendingPages.clear();
     pages.clear();
+    graphUpdater.execute(() -> {
+      graphStartUrl = null;
+      aggregator.clear();
+      graph.clear();
+      graph.addAttribute("ui.stylesheet", loadStyleSheet());
+    });
+  }
+
+  /**
+   * Shows the pages of a host or a directory node of the graph one level finer, other nodes are left as they are.
+   */
+  public void expandGraphNode(String key) {
+    graphUpdater.execute(() -> {
+      if (aggregator.expand(key)) {
+        rebuildGraph();
+      }
+    });
+  }
+
+  // runs on the graph updater thread, as everything that touches the graph or the aggregator
+  private void showInGraph(List<PageInfo> done) {
+    done.forEach(pageInfo -> aggregator.addPage(pageInfo.getUrl(), pageInfo.getLinks()));
+    if (aggregator.getDetail() == GraphDetail.PAGES && aggregator.nodeCount() > maxGraphNodes) {
+      // too many pages to lay out, the viewer would not keep up
+      aggregator.setDetail(GraphDetail.DIRECTORIES);
+      rebuildGraph();
+      runOnFxThread(() -> graphDetail.set(GraphDetail.DIRECTORIES));
+      return;
+    }
+    aggregator.flush(graphSink);
+  }
+
+  private void rebuildGraph() {
+    aggregator.clear();
     graph.clear();
     graph.addAttribute("ui.stylesheet", loadStyleSheet());
+    if (graphStartUrl != null) {
+      aggregator.addUrl(graphStartUrl);
+    }
+    if (session != null) {
+      session.getResults().getScannedPages().stream()
+        .filter(pageInfo -> pageInfo.getStatus() != ScanStatus.IN_PROGRESS)
+        .forEach(pageInfo -> aggregator.addPage(pageInfo.getUrl(), pageInfo.getLinks()));
+    }
+    aggregator.flush(graphSink);
+  }
+
+  private class GraphUpdater implements GraphAggregator.Sink {
+
+    @Override
+    public void node(String key, boolean group, int urls, boolean added) {
+      Node node = added ? graph.addNode(key) : graph.getNode(key);
+      if (key.equals(graphStartUrl)) {
+        node.addAttribute("ui.label", key);
+        node.addAttribute("ui.class", "start");
+      } else if (group) {
+        node.addAttribute("ui.label", String.format("%s (%d)", shorten(key), urls));
+        node.addAttribute("ui.class", "group");
+      } else if (added) {
+        node.addAttribute("ui.label", shorten(key));
+      }
+    }
+
+    @Override
+    public void edge(String from, String to, int links, boolean added) {
+      Edge edge = added ? graph.addEdge(from + " -> " + to, from, to, true) : graph.getEdge(from + " -> " + to);
+      if (links > 1) {
+        edge.addAttribute("ui.label", links);
+      }
+    }
   }
 
   public void startScan() throws MalformedURLException {
     saved = false;
-    Node startNode = graph.addNode(startUrl.get());
-    startNode.addAttribute("ui.label", startUrl.get());
-    startNode.addAttribute("ui.class", "start");
+    String start = startUrl.get();
+    graphUpdater.execute(() -> {
+      graphStartUrl = start;
+      aggregator.addUrl(start);
+      aggregator.flush(graphSink);
+    });
 
     session = new ScanSession(new ScanSettings(startUrl.get(), threadCount.get()));
 
-    session.addListener(pageInfo -> {
-      if (pageInfo.getStatus() != ScanStatus.IN_PROGRESS) {
-        if (graph.getNode(pageInfo.getUrl()) == null) {
-          Node node = graph.addNode(pageInfo.getUrl());
-          node.addAttribute("ui.label", shorten(pageInfo.getUrl()));
-          //System.out.println("+ Node " + pageInfo.getUrl());
+    // the graph shows only pages that are done, so events of pages in progress can be dropped when the graph lags
+    session.addBatchListener(batch -> {
+      List<PageInfo> done = batch.stream()
+        .filter(pageInfo -> pageInfo.getStatus() != ScanStatus.IN_PROGRESS)
+        .collect(Collectors.toList());
+      graphUpdater.execute(() -> showInGraph(done));
+      done.forEach(pageInfo -> pendingPages.add(new PageInfoModel(pageInfo)));
+    }, OverflowPolicy.DROP_PROGRESS);
+    // ticks as often as the FX pulse, the table is refreshed only when it is time and there are new pages
+    ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "page-table-refresher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    refresher.scheduleAtFixedRate(new Runnable() {
+      private long lastRefresh;
+
+      @Override
+      public void run() {
+        long now = System.nanoTime();
+        if (now - lastRefresh >= 1_000_000_000L / Math.max(1, maxRefreshRate.get()) && !pendingPages.isEmpty()
+          && refreshScheduled.compareAndSet(false, true)) {
+          lastRefresh = now;
+          runOnFxThread(() -> {
+            refreshScheduled.set(false);
+            showPendingPages();
+          });
         }
-        pageInfo.getLinks().forEach(link -> {
-          if (graph.getNode(link) == null) {
-            Node node = graph.addNode(link);
-            node.addAttribute("ui.label", shorten(link));
-            //System.out.println("+ Node " + link);
-          }
-          if (graph.getEdge(String.format("%s -> %s", pageInfo.getUrl(), link)) == null) {
-            Edge edge = graph.addEdge(String.format("%s -> %s", pageInfo.getUrl(), link), pageInfo.getUrl(), link, true);
-            //System.out.println("+ Edge " + edge.getId());
-          }
-        });
-        pages.add(new PageInfoModel(pageInfo));
       }
-    });
+    }, 0, 16, TimeUnit.MILLISECONDS);
     Thread t = new Thread(session);
     t.start();
 
@@ -150,11 +283,39 @@ public class ScannerModel {
       } catch (InterruptedException e) {
         e.printStackTrace();
       }
+      refresher.shutdownNow();
+      // goes before the finish handler, so the handler sees all the pages
+      runOnFxThread(this::showPendingPages);
+      try {
+        graphUpdater.submit(() -> {}).get();
+      } catch (InterruptedException | ExecutionException e) {
+        e.printStackTrace();
+      }
       finishHandler.run();
     });
     waiter.start();
   }
 
+  private static void runOnFxThread(Runnable action) {
+    try {
+      Platform.runLater(action);
+    } catch (IllegalStateException e) {
+      // there is no FX application, as in tests, so nobody else can touch the list
+      action.run();
+    }
+  }
+
+  // runs on the FX thread, the table gets a single change event for all the pages that came since the last time
+  private void showPendingPages() {
+    List<PageInfoModel> batch = new ArrayList<>();
+    for (PageInfoModel page; (page = pendingPages.poll()) != null; ) {
+      batch.add(page);
+    }
+    if (!batch.isEmpty()) {
+      pages.addAll(batch);
+    }
+  }
+
   private String shorten(String link) {
     return link.startsWith(startUrl.get()) ? "+" + link.substring(startUrl.get().length()) : link;
   }
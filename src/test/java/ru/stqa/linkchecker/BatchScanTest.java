@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class BatchScanTest {
+
+  private TestServer testServer;
+
+  BatchScanTest(TestServer testServer) {
+    this.testServer = testServer;
+  }
+
+  @Test
+  void scansAllTargetsAndChecksSharedLinksOnce() throws MalformedURLException, InterruptedException, IOException {
+    // both pages link to /simple_page.html, which is outside of their base URL
+    List<ScanSettings> targets = List.of(
+      new ScanSettings(testServer.page("subdir/single_link_page.html"), 5),
+      new ScanSettings(testServer.page("subdir/page_with_map.html"), 5));
+    Map<Integer, ScanSession> sessions = new ConcurrentHashMap<>();
+    try (SharedScanResources shared = new SharedScanResources(new ScanSettings(testServer.page("/"), 4))) {
+      new BatchScan(targets, shared, 1).run(sessions::put);
+
+      assertEquals(2, sessions.size());
+      assertEquals(2, sessions.get(0).getResults().getScannedPages().size());
+      assertEquals(3, sessions.get(1).getResults().getScannedPages().size());
+      assertEquals(200, sessions.get(1).getResults().getPageInfo(testServer.page("/simple_page.html")).getHttpStatus());
+      assertNotNull(shared.getLinkResults().get(testServer.page("/simple_page.html")));
+      // the second target got the shared link from the cache
+      assertEquals(2, sessions.get(1).getMetrics().getPhase(FetchPhase.TOTAL).getCount());
+      assertEquals(4, shared.getRequestBudget().availablePermits());
+    }
+  }
+
+  @Test
+  void readsTargetList() throws IOException {
+    assertEquals(List.of("http://localhost/a/", "http://localhost/b/"),
+      BatchScan.readTargets(new StringReader("http://localhost/a/\n\n# a comment\n  http://localhost/b/  \n")));
+  }
+
+  @Test
+  void namesReportsAfterTargets() {
+    assertEquals("001-localhost_8080_docs_index.html.html", BatchScan.reportName(0, "http://localhost:8080/docs/index.html"));
+    assertEquals("012-example.com.html", BatchScan.reportName(11, "https://example.com/"));
+  }
+}
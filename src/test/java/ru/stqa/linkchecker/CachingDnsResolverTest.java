@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ru.stqa.linkchecker;
+
+import org.apache.http.conn.DnsResolver;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingDnsResolverTest {
+
+  private static final InetAddress ADDRESS = InetAddress.getLoopbackAddress();
+
+  // answers for a.com only, counts the lookups by host and holds the lookups of blocked hosts until the gate opens
+  private static class StubResolver implements DnsResolver {
+
+    final Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+    final Set<String> blocked = ConcurrentHashMap.newKeySet();
+    final CountDownLatch gate = new CountDownLatch(1);
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+      lookups.computeIfAbsent(host, h -> new AtomicInteger()).incrementAndGet();
+      try {
+        if (blocked.contains(host)) {
+          gate.await();
+        }
+      } catch (InterruptedException e) {
+        throw new UnknownHostException(host);
+      }
+      if (!host.equals("a.com")) {
+        throw new UnknownHostException(host);
+      }
+      return new InetAddress[] {ADDRESS};
+    }
+
+    int count(String host) {
+      AtomicInteger count = lookups.get(host);
+      return count == null ? 0 : count.get();
+    }
+  }
+
+  @Test
+  void cachesResolvedAddressesUntilTheyExpire() throws UnknownHostException {
+    StubResolver stub = new StubResolver();
+    CachingDnsResolver resolver = new CachingDnsResolver(stub, 1000, 100);
+    assertArrayEquals(new InetAddress[] {ADDRESS}, resolver.resolve("a.com", 0));
+    assertArrayEquals(new InetAddress[] {ADDRESS}, resolver.resolve("a.com", 999));
+    assertEquals(1, stub.count("a.com"));
+    resolver.resolve("a.com", 1000);
+    assertEquals(2, stub.count("a.com"));
+  }
+
+  @Test
+  void cachesNamesThatDoNotResolve() {
+    StubResolver stub = new StubResolver();
+    CachingDnsResolver resolver = new CachingDnsResolver(stub, 1000, 100);
+    assertThrows(UnknownHostException.class, () -> resolver.resolve("dead.com", 0));
+    assertThrows(UnknownHostException.class, () -> resolver.resolve("dead.com", 99));
+    assertEquals(1, stub.count("dead.com"));
+    assertThrows(UnknownHostException.class, () -> resolver.resolve("dead.com", 100));
+    assertEquals(2, stub.count("dead.com"));
+  }
+
+  @Test
+  void requestWaitsForPrefetchInProgress() throws Exception {
+    StubResolver stub = new StubResolver();
+    stub.blocked.add("a.com");
+    CachingDnsResolver resolver = new CachingDnsResolver(stub, 1000, 100);
+    resolver.prefetch("a.com", 0);
+    resolver.prefetch("a.com", 0);
+
+    CountDownLatch resolved = new CountDownLatch(1);
+    Thread request = new Thread(() -> {
+      try {
+        resolver.resolve("a.com", 0);
+        resolved.countDown();
+      } catch (UnknownHostException e) {
+        e.printStackTrace();
+      }
+    });
+    request.start();
+    assertFalse(resolved.await(100, TimeUnit.MILLISECONDS));
+    stub.gate.countDown();
+    assertTrue(resolved.await(5, TimeUnit.SECONDS));
+    assertEquals(1, stub.count("a.com"));
+    resolver.close();
+  }
+
+  @Test
+  void prefetchResolvesHostBeforeFirstRequest() throws Exception {
+    StubResolver stub = new StubResolver();
+    CachingDnsResolver resolver = new CachingDnsResolver(stub, 1000, 100);
+    resolver.prefetch("a.com", 0);
+    resolver.prefetch("dead.com", 0);
+    long deadline = System.currentTimeMillis() + 5000;
+    while ((stub.count("a.com") == 0 || stub.count("dead.com") == 0) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertArrayEquals(new InetAddress[] {ADDRESS}, resolver.resolve("a.com", 10));
+    assertThrows(UnknownHostException.class, () -> resolver.resolve("dead.com", 10));
+    assertEquals(1, stub.count("a.com"));
+    assertEquals(1, stub.count("dead.com"));
+    resolver.close();
+  }
+
+  @Test
+  void requestDoesNotWaitForPrefetchesOfOtherHosts() throws Exception {
+    StubResolver stub = new StubResolver();
+    CachingDnsResolver resolver = new CachingDnsResolver(stub, 1000, 100);
+    for (int i = 0; i < 10; i++) {
+      stub.blocked.add("blocked" + i + ".com");
+      resolver.prefetch("blocked" + i + ".com", 0);
+    }
+    resolver.prefetch("a.com", 0);
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () ->
+      assertArrayEquals(new InetAddress[] {ADDRESS}, resolver.resolve("a.com", 0)));
+    stub.gate.countDown();
+    resolver.close();
+    assertEquals(1, stub.count("a.com"));
+  }
+
+  @Test
+  void forgetsQueuedPrefetchesWhenClosed() {
+    StubResolver stub = new StubResolver();
+    CachingDnsResolver resolver = new CachingDnsResolver(stub, 1000, 100);
+    for (int i = 0; i < 10; i++) {
+      stub.blocked.add("blocked" + i + ".com");
+      resolver.prefetch("blocked" + i + ".com", 0);
+    }
+    resolver.prefetch("a.com", 0);
+    resolver.close();
+    stub.gate.countDown();
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+      assertArrayEquals(new InetAddress[] {ADDRESS}, resolver.resolve("a.com", 0));
+      assertThrows(UnknownHostException.class, () -> resolver.resolve("blocked9.com", 0));
+    });
+  }
+
+  @Test
+  void purgesExpiredAnswers() {
+    CachingDnsResolver resolver = new CachingDnsResolver(new StubResolver(), 1000, 100);
+    for (int i = 0; i < 1500; i++) {
+      String host = "old" + i + ".com";
+      assertThrows(UnknownHostException.class, () -> resolver.resolve(host, 0));
+    }
+    for (int i = 0; i < 1500; i++) {
+      String host = "new" + i + ".com";
+      assertThrows(UnknownHostException.class, () -> resolver.resolve(host, 1000));
+    }
+    assertTrue(resolver.size() <= 1500);
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterTest {
+
+  private static Map<String, Integer> statuses(ScanResults results) {
+    return results.getScannedPages().stream().collect(Collectors.toMap(PageInfo::getUrl, PageInfo::getHttpStatus));
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  @Test
+  void clusterFindsTheSamePagesAsASingleNode() throws Exception {
+    Server jetty = new Server(0);
+    jetty.setHandler(new VirtualSiteHandler().pageCount(200).fanOut(20).hostCount(30).brokenRatio(0.05).bodySize(512));
+    jetty.start();
+    try {
+      int port = ((ServerConnector) jetty.getConnectors()[0]).getLocalPort();
+      scanWithCluster(String.format("http://127.0.0.1:%s%s%s", port, VirtualSiteHandler.PREFIX, VirtualSiteHandler.pageName(0)));
+    } finally {
+      jetty.stop();
+    }
+  }
+
+  private void scanWithCluster(String startUrl) throws Exception {
+    ScanSession single = new ScanSession(new ScanSettings(startUrl, 10));
+    single.run();
+
+    List<InetSocketAddress> addresses = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      addresses.add(new InetSocketAddress("127.0.0.1", freePort()));
+    }
+    List<ScanSession> sessions = new ArrayList<>();
+    List<ClusterNode> nodes = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < addresses.size(); i++) {
+      ScanSession session = new ScanSession(new ScanSettings(startUrl, 10));
+      ClusterNode node = new ClusterNode(session, addresses, i);
+      node.start();
+      sessions.add(session);
+      nodes.add(node);
+      threads.add(new Thread(session));
+    }
+    threads.forEach(Thread::start);
+    try {
+      nodes.get(0).awaitCompletion();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } finally {
+      for (ClusterNode node : nodes) {
+        node.close();
+      }
+    }
+
+    assertEquals(statuses(single.getResults()), statuses(sessions.get(0).getResults()));
+
+    HostRing ring = new HostRing(addresses.stream().map(a -> a.getHostString() + ":" + a.getPort()).collect(Collectors.toList()));
+    int busyNodes = 0;
+    for (int i = 1; i < sessions.size(); i++) {
+      int node = i;
+      // each host is fetched by its owner only
+      assertTrue(sessions.get(i).getResults().getScannedPages().stream().allMatch(p -> ring.ownerOf(p.getUrl()) == node));
+      busyNodes += sessions.get(i).getResults().getScannedPages().isEmpty() ? 0 : 1;
+    }
+    assertTrue(busyNodes > 0);
+  }
+
+  @Test
+  void coordinatorFailsScanWhenNodeFails() throws Exception {
+    List<InetSocketAddress> addresses = List.of(new InetSocketAddress("127.0.0.1", freePort()));
+    // the session is never run, so the scan can only end with the failure
+    ClusterNode node = new ClusterNode(new ScanSession(new ScanSettings("http://127.0.0.1:1/", 1)), addresses, 0);
+    node.start();
+    try {
+      try (Socket socket = new Socket()) {
+        socket.connect(addresses.get(0));
+        socket.getOutputStream().write(42);
+      }
+      assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(IOException.class, node::awaitCompletion));
+    } finally {
+      node.close();
+    }
+  }
+
+  @Test
+  void spreadsHostsOverNodes() {
+    HostRing ring = new HostRing(List.of("node1:9000", "node2:9000", "node3:9000"));
+    int[] hosts = new int[3];
+    for (int i = 0; i < 3000; i++) {
+      int owner = ring.ownerOf("http://host" + i + ".example.com/page.html");
+      assertEquals(owner, ring.ownerOf("http://host" + i + ".example.com/other.html?a=b"));
+      hosts[owner]++;
+    }
+    for (int count : hosts) {
+      assertTrue(count > 700, "unbalanced ring: " + count);
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+
+  private static final long MS = 1_000_000;
+
+  @Test
+  void growsWhileLatencyStaysFlat() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 50);
+    for (int i = 0; i < 10; i++) {
+      limiter.onSample(10 * MS, false);
+    }
+    assertEquals(14, limiter.getLimit());
+    for (int i = 0; i < 100; i++) {
+      limiter.onSample(10 * MS, false);
+    }
+    assertEquals(50, limiter.getLimit());
+  }
+
+  @Test
+  void halvesOnOverloadOncePerWindow() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(16, 50);
+    limiter.onSample(10 * MS, true);
+    assertEquals(8, limiter.getLimit());
+    // the other responses of the same window do not cut it any further
+    for (int i = 0; i < 7; i++) {
+      limiter.onSample(10 * MS, true);
+    }
+    assertEquals(8, limiter.getLimit());
+    limiter.onSample(10 * MS, true);
+    assertEquals(4, limiter.getLimit());
+  }
+
+  @Test
+  void backsOffWhenLatencyClimbs() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 10);
+    limiter.onSample(10 * MS, false);
+    limiter.onSample(100 * MS, false);
+    assertEquals(9, limiter.getLimit());
+  }
+
+  @Test
+  void growsSlowlyAfterFirstCut() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 50);
+    limiter.onSample(10 * MS, true);
+    assertEquals(5, limiter.getLimit());
+    for (int i = 0; i < 5; i++) {
+      limiter.onSample(10 * MS, false);
+    }
+    assertEquals(5, limiter.getLimit());
+    for (int i = 0; i < 5; i++) {
+      limiter.onSample(10 * MS, false);
+    }
+    assertEquals(6, limiter.getLimit());
+  }
+
+  @Test
+  void ignoresLatencyOfSamplesWithoutIt() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 50);
+    limiter.onSample(1 * MS, false);
+    for (int i = 0; i < 10; i++) {
+      limiter.onSample(false);
+    }
+    assertEquals(15, limiter.getLimit());
+    limiter.onSample(true);
+    assertEquals(7, limiter.getLimit());
+  }
+
+  @Test
+  void neverGoesBelowOne() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10);
+    for (int i = 0; i < 10; i++) {
+      limiter.onSample(10 * MS, true);
+    }
+    assertEquals(1, limiter.getLimit());
+  }
+}
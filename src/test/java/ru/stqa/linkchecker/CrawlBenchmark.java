@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Scans a generated site from end to end and reports throughput, latency, peak heap and GC time.
+ * Request latency is measured by the site, page latency is the time a worker takes to check a page, from sending
+ * the request to the result, as the scan metrics record it. Neither is taken from page events, listeners get them
+ * in batches on threads of their own, so the time of an event says when it was delivered rather than fetched.
+ * Settings are read from system properties, run it with {@code gradle crawlBenchmark -Dcrawl.pages=100000}.
+ */
+public class CrawlBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    Samples requestTimes = new Samples();
+    VirtualSiteHandler site = new VirtualSiteHandler()
+      .pageCount(Integer.getInteger("crawl.pages", 10_000))
+      .fanOut(Integer.getInteger("crawl.fanOut", 20))
+      .duplicationRatio(Double.parseDouble(System.getProperty("crawl.duplication", "0.8")))
+      .brokenRatio(Double.parseDouble(System.getProperty("crawl.broken", "0.01")))
+      .bodySize(Integer.getInteger("crawl.bodySize", 16 * 1024))
+      .latencyMillis(Long.getLong("crawl.latency", 0))
+      .requestTimes(requestTimes);
+
+    Server jetty = new Server(0);
+    jetty.setHandler(site);
+    jetty.start();
+    try {
+      int port = ((ServerConnector) jetty.getConnectors()[0]).getLocalPort();
+      String startUrl = String.format("http://127.0.0.1:%s%s%s", port, VirtualSiteHandler.PREFIX,
+        VirtualSiteHandler.pageName(0));
+      ScanSettings settings = new ScanSettings(startUrl, Integer.getInteger("crawl.threads", 20))
+        .virtualThreads(Boolean.getBoolean("crawl.virtualThreads"))
+        .transportType(TransportType.valueOf(System.getProperty("crawl.transport", "BLOCKING")));
+      run(settings, requestTimes).print(System.out);
+    } finally {
+      jetty.stop();
+    }
+  }
+
+  static Result run(ScanSettings settings, Samples requestTimes) {
+    ScanSession session = new ScanSession(settings);
+
+    List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans();
+    heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+    long gcBefore = gcTime();
+    long start = System.nanoTime();
+
+    session.run();
+
+    Result result = new Result();
+    result.elapsedNanos = System.nanoTime() - start;
+    result.gcMillis = gcTime() - gcBefore;
+    result.pages = session.getResults().getScannedPages().size();
+    result.peakHeap = heapPools.stream()
+      .filter(pool -> pool.getType() == MemoryType.HEAP)
+      .mapToLong(pool -> pool.getPeakUsage().getUsed())
+      .sum();
+    result.metrics = session.getMetrics();
+    result.requestLatencies = requestTimes.sorted();
+    result.pageLatency = session.getMetrics().getPhase(FetchPhase.TOTAL);
+    return result;
+  }
+
+  private static long gcTime() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+      .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+      .filter(time -> time > 0)
+      .sum();
+  }
+
+  static class Result {
+    long elapsedNanos;
+    long gcMillis;
+    long peakHeap;
+    int pages;
+    ScanMetrics metrics;
+    long[] requestLatencies;
+    ScanMetrics.PhaseStatistics pageLatency;
+
+    double pagesPerSecond() {
+      return pages * 1e9 / elapsedNanos;
+    }
+
+    static double percentileMillis(long[] latencies, double percentile) {
+      if (latencies.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+      return latencies[Math.max(0, index)] / 1e6;
+    }
+
+    void print(PrintStream out) {
+      out.printf("pages:        %d%n", pages);
+      out.printf("time:         %.1f s%n", elapsedNanos / 1e9);
+      out.printf("throughput:   %.1f pages/s%n", pagesPerSecond());
+      out.printf("request p50:  %.2f ms%n", percentileMillis(requestLatencies, 50));
+      out.printf("request p99:  %.2f ms%n", percentileMillis(requestLatencies, 99));
+      out.printf("page p50:     %.2f ms%n", pageLatency.getP50Millis());
+      out.printf("page p99:     %.2f ms%n", pageLatency.getP99Millis());
+      out.printf("peak heap:    %.1f MB%n", peakHeap / (1024.0 * 1024));
+      out.printf("gc time:      %d ms%n", gcMillis);
+      out.println();
+      metrics.print(out);
+    }
+  }
+
+  /**
+   * Latencies in a growing primitive array, so that collecting them does not add to the heap of the scan
+   * more than necessary.
+   */
+  static class Samples implements LongConsumer {
+    private long[] values = new long[1024];
+    private int size;
+
+    @Override
+    public synchronized void accept(long nanos) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = nanos;
+    }
+
+    synchronized long[] sorted() {
+      long[] copy = Arrays.copyOf(values, size);
+      Arrays.sort(copy);
+      return copy;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrawlBenchmarkTest {
+
+  private CrawlBenchmark.Result scan(VirtualSiteHandler site) throws Exception {
+    Server jetty = new Server(0);
+    CrawlBenchmark.Samples requestTimes = new CrawlBenchmark.Samples();
+    jetty.setHandler(site.requestTimes(requestTimes));
+    jetty.start();
+    try {
+      int port = ((ServerConnector) jetty.getConnectors()[0]).getLocalPort();
+      String startUrl = String.format("http://127.0.0.1:%s%s%s", port, VirtualSiteHandler.PREFIX,
+        VirtualSiteHandler.pageName(0));
+      return CrawlBenchmark.run(new ScanSettings(startUrl, 10), requestTimes);
+    } finally {
+      jetty.stop();
+    }
+  }
+
+  @Test
+  void scansEveryGeneratedPage() throws Exception {
+    VirtualSiteHandler site = new VirtualSiteHandler().pageCount(300).fanOut(10).brokenRatio(0).bodySize(1024);
+    CrawlBenchmark.Result result = scan(site);
+    assertEquals(300, result.pages);
+    assertEquals(300, result.requestLatencies.length);
+    assertEquals(300, result.pageLatency.getCount());
+    assertTrue(result.pageLatency.getP50Millis() <= result.pageLatency.getP99Millis());
+    assertTrue(CrawlBenchmark.Result.percentileMillis(result.requestLatencies, 50)
+      <= CrawlBenchmark.Result.percentileMillis(result.requestLatencies, 99));
+  }
+
+  @Test
+  void scansGeneratedBrokenLinks() throws Exception {
+    VirtualSiteHandler site = new VirtualSiteHandler().pageCount(200).fanOut(10).brokenRatio(0.05).bodySize(1024);
+    Set<String> broken = IntStream.range(0, site.getPageCount())
+      .boxed().flatMap(page -> site.links(page).stream())
+      .filter(link -> link.startsWith("missing"))
+      .collect(Collectors.toSet());
+    assertTrue(broken.size() > 0);
+    assertEquals(200 + broken.size(), scan(site).pages);
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves pages under /faults/ that misbehave the way real servers do. The index page links to all of them:
+ * <ul>
+ *   <li>slow.html does not answer until the stall time is over,</li>
+ *   <li>trickle.html sends one byte every 100 ms during the stall time,</li>
+ *   <li>reset.html sends a part of the promised body and drops the connection,</li>
+ *   <li>endless.html sends a chunked body during the stall time,</li>
+ *   <li>loop1.html and loop2.html redirect to each other,</li>
+ *   <li>ok.html is a normal page.</li>
+ * </ul>
+ * Each fault is bounded by the stall time, so that a client that never gives up does not keep server threads
+ * forever.
+ * <p>
+ * The mixed.html page is not linked from the index, it links to fast pages of this host, to late.html that
+ * answers in 200 ms on another host name of this server, and to a host that does not accept connections.
+ * The no_head_links.html page is not linked either, it links to no_head.html on another host name of this server,
+ * that page rejects HEAD with 405 and counts the HEAD requests.
+ */
+public class FaultInjectionHandler extends AbstractHandler {
+
+  public static final String PREFIX = "/faults/";
+
+  private static final String[] PAGES = {"slow.html", "trickle.html", "reset.html", "endless.html", "loop1.html", "ok.html"};
+
+  private static final AtomicInteger headRequests = new AtomicInteger();
+
+  private long stallMillis = 30_000;
+
+  public static int getHeadRequests() {
+    return headRequests.get();
+  }
+
+  public FaultInjectionHandler stallMillis(long stallMillis) {
+    this.stallMillis = stallMillis;
+    return this;
+  }
+
+  @Override
+  public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+    throws IOException {
+    if (!target.startsWith(PREFIX)) {
+      return;
+    }
+    baseRequest.setHandled(true);
+    long deadline = System.currentTimeMillis() + stallMillis;
+    switch (target.substring(PREFIX.length())) {
+      case "index.html":
+        PrintWriter index = page(response);
+        for (String page : PAGES) {
+          index.write("<p><a href=\"" + page + "\">" + page + "</a></p>\n");
+        }
+        index.write("</body></html>\n");
+        break;
+
+      case "ok.html":
+        page(response).write("<p>OK</p></body></html>\n");
+        break;
+
+      case "mixed.html":
+        PrintWriter mixed = page(response);
+        for (int i = 0; i < 10; i++) {
+          mixed.write("<p><a href=\"ok.html?" + i + "\">fast</a></p>\n");
+          mixed.write("<p><a href=\"http://localhost:" + request.getLocalPort() + PREFIX + "late.html?" + i + "\">slow</a></p>\n");
+          mixed.write("<p><a href=\"http://127.0.0.1:1/page" + i + ".html\">dead</a></p>\n");
+        }
+        mixed.write("</body></html>\n");
+        break;
+
+      case "no_head_links.html":
+        PrintWriter noHeadLinks = page(response);
+        for (int i = 0; i < 5; i++) {
+          noHeadLinks.write("<p><a href=\"http://localhost:" + request.getLocalPort() + PREFIX + "no_head.html?" + i + "\">link</a></p>\n");
+        }
+        noHeadLinks.write("</body></html>\n");
+        break;
+
+      case "no_head.html":
+        if ("HEAD".equals(request.getMethod())) {
+          headRequests.incrementAndGet();
+          response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+        } else {
+          page(response).write("<p>GET only</p></body></html>\n");
+        }
+        break;
+
+      case "late.html":
+        sleepUntil(System.currentTimeMillis() + 200);
+        page(response).write("<p>Late</p></body></html>\n");
+        break;
+
+      case "slow.html":
+        sleepUntil(deadline);
+        page(response).write("<p>Finally</p></body></html>\n");
+        break;
+
+      case "trickle.html":
+        PrintWriter trickle = page(response);
+        response.flushBuffer();
+        while (System.currentTimeMillis() < deadline) {
+          trickle.write(" ");
+          response.flushBuffer();
+          sleepUntil(Math.min(deadline, System.currentTimeMillis() + 100));
+        }
+        trickle.write("</body></html>\n");
+        break;
+
+      case "reset.html":
+        response.setContentLength(100_000);
+        page(response).write("<p>This is just the beginning</p>\n");
+        response.flushBuffer();
+        baseRequest.getHttpChannel().getEndPoint().close();
+        break;
+
+      case "endless.html":
+        PrintWriter endless = page(response);
+        while (System.currentTimeMillis() < deadline) {
+          endless.write("<p>More and more text</p>\n");
+          response.flushBuffer();
+        }
+        endless.write("</body></html>\n");
+        break;
+
+      case "loop1.html":
+        response.sendRedirect("loop2.html");
+        break;
+
+      case "loop2.html":
+        response.sendRedirect("loop1.html");
+        break;
+
+      default:
+        response.sendError(HttpServletResponse.SC_NOT_FOUND);
+    }
+  }
+
+  private static PrintWriter page(HttpServletResponse response) throws IOException {
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType("text/html;charset=utf-8");
+    PrintWriter out = response.getWriter();
+    out.write("<html><body>\n");
+    return out;
+  }
+
+  private static void sleepUntil(long time) {
+    try {
+      Thread.sleep(Math.max(0, time - System.currentTimeMillis()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HostSchedulerTest {
+
+  @Test
+  void limitsConcurrentRequestsPerHost() {
+    HostScheduler scheduler = new HostScheduler(1, 0);
+    scheduler.add("http://a.com/1", 0);
+    scheduler.add("http://a.com/2", 0);
+    scheduler.add("http://b.com/1", 0);
+
+    assertEquals("http://a.com/1", scheduler.next(0));
+    assertEquals("http://b.com/1", scheduler.next(0));
+    assertNull(scheduler.next(0));
+    assertEquals(Long.MAX_VALUE, scheduler.nextDelay(0));
+
+    scheduler.release("http://a.com/1", 0);
+    assertEquals("http://a.com/2", scheduler.next(0));
+    assertTrue(scheduler.isEmpty());
+  }
+
+  @Test
+  void limitsRequestRatePerHost() {
+    HostScheduler scheduler = new HostScheduler(0, 2);
+    for (int i = 0; i < 4; i++) {
+      scheduler.add("http://a.com/" + i, 0);
+    }
+    scheduler.add("http://b.com/1", 0);
+
+    assertEquals("http://a.com/0", scheduler.next(0));
+    assertEquals("http://b.com/1", scheduler.next(0));
+    assertEquals("http://a.com/1", scheduler.next(0));
+    assertNull(scheduler.next(0));
+    assertEquals(500, scheduler.nextDelay(0));
+    assertNull(scheduler.next(499));
+    assertEquals("http://a.com/2", scheduler.next(500));
+    assertNull(scheduler.next(500));
+    assertEquals("http://a.com/3", scheduler.next(1000));
+  }
+
+  @Test
+  void pausesHostThatAsksToRetryLater() {
+    HostScheduler scheduler = new HostScheduler(0, 0);
+    scheduler.add("http://a.com/1", 0);
+    scheduler.add("http://b.com/1", 0);
+
+    assertEquals("http://a.com/1", scheduler.next(0));
+    scheduler.release("http://a.com/1", 0);
+    assertTrue(scheduler.retryAt("http://a.com/1", 1000, 0));
+
+    assertEquals("http://b.com/1", scheduler.next(0));
+    assertNull(scheduler.next(0));
+    assertEquals(1000, scheduler.nextDelay(0));
+    assertEquals("http://a.com/1", scheduler.next(1000));
+  }
+
+  @Test
+  void givesUpAfterTooManyRetries() {
+    HostScheduler scheduler = new HostScheduler(0, 0);
+    scheduler.add("http://a.com/1", 0);
+    for (int i = 0; i < 3; i++) {
+      assertEquals("http://a.com/1", scheduler.next(i * 10));
+      scheduler.release("http://a.com/1", i * 10);
+      assertTrue(scheduler.retryAt("http://a.com/1", i * 10 + 10, i * 10));
+    }
+    assertEquals("http://a.com/1", scheduler.next(30));
+    scheduler.release("http://a.com/1", 30);
+    assertFalse(scheduler.retryAt("http://a.com/1", 40, 30));
+    assertTrue(scheduler.isEmpty());
+  }
+
+  @Test
+  void limitsRequestsPerHostAdaptively() {
+    HostScheduler scheduler = new HostScheduler(0, 0, 10, 0);
+    for (int i = 0; i < 4; i++) {
+      scheduler.add("http://a.com/" + i, 0);
+    }
+
+    assertEquals("http://a.com/0", scheduler.next(0));
+    assertEquals("http://a.com/1", scheduler.next(0));
+    assertNull(scheduler.next(0));
+
+    scheduler.sample("http://a.com/0", 1_000_000, false);
+    scheduler.release("http://a.com/0", 0);
+    assertEquals(3, scheduler.limits().get("http://a.com:-1").intValue());
+    assertEquals("http://a.com/2", scheduler.next(0));
+    assertEquals("http://a.com/3", scheduler.next(0));
+
+    scheduler.sample("http://a.com/1", 1_000_000, true);
+    scheduler.release("http://a.com/1", 0);
+    assertEquals(1, scheduler.limits().get("http://a.com:-1").intValue());
+  }
+
+  @Test
+  void retriesTransientFailuresWithBackoff() {
+    HostScheduler scheduler = new HostScheduler(0, 0);
+    scheduler.add("http://a.com/1", 0);
+    scheduler.add("http://a.com/2", 0);
+    assertEquals("http://a.com/1", scheduler.next(0));
+    scheduler.release("http://a.com/1", 0);
+
+    assertTrue(scheduler.retryWithBackoff("http://a.com/1", 0));
+    // the host is not held back by the failed URL
+    assertEquals("http://a.com/2", scheduler.next(0));
+    assertNull(scheduler.next(0));
+    long delay = scheduler.nextDelay(0);
+    assertTrue(delay >= 250 && delay <= 500, "delay " + delay);
+    assertEquals("http://a.com/1", scheduler.next(500));
+
+    assertTrue(scheduler.retryWithBackoff("http://a.com/1", 500));
+    delay = scheduler.nextDelay(500);
+    assertTrue(delay >= 500 && delay <= 1000, "delay " + delay);
+    assertEquals("http://a.com/1", scheduler.next(1500));
+    assertTrue(scheduler.retryWithBackoff("http://a.com/1", 1500));
+    assertEquals("http://a.com/1", scheduler.next(3500));
+    assertFalse(scheduler.retryWithBackoff("http://a.com/1", 3500));
+  }
+
+  @Test
+  void forgetsAttemptsOfFinishedUrl() {
+    HostScheduler scheduler = new HostScheduler(0, 0);
+    scheduler.add("http://a.com/1", 0);
+    for (int i = 0; i < 3; i++) {
+      assertEquals("http://a.com/1", scheduler.next(i * 10_000));
+      scheduler.release("http://a.com/1", i * 10_000);
+      assertTrue(scheduler.retryWithBackoff("http://a.com/1", i * 10_000));
+    }
+    assertEquals("http://a.com/1", scheduler.next(30_000));
+    scheduler.release("http://a.com/1", 30_000);
+    // the last attempt succeeded, a later failure of the same URL starts counting anew
+    scheduler.finish("http://a.com/1");
+    assertTrue(scheduler.retryWithBackoff("http://a.com/1", 30_000));
+  }
+
+  @Test
+  void refusesUrlsOfHostThatIsDown() {
+    HostScheduler scheduler = new HostScheduler(0, 0, 0, 2);
+    for (int i = 0; i < 4; i++) {
+      scheduler.add("http://a.com/" + i, 0);
+    }
+    assertEquals("http://a.com/0", scheduler.next(0));
+    assertEquals("http://a.com/1", scheduler.next(0));
+
+    assertEquals(List.of(), scheduler.recordOutcome("http://a.com/0", false, 0));
+    assertEquals(List.of("http://a.com/2", "http://a.com/3"), scheduler.recordOutcome("http://a.com/1", false, 0));
+    scheduler.release("http://a.com/0", 0);
+    scheduler.release("http://a.com/1", 0);
+    assertTrue(scheduler.isEmpty());
+    assertFalse(scheduler.add("http://a.com/4", 999));
+    assertFalse(scheduler.retryWithBackoff("http://a.com/1", 999));
+
+    // a single probe after a second
+    assertTrue(scheduler.add("http://a.com/5", 1000));
+    assertTrue(scheduler.add("http://a.com/6", 1000));
+    assertEquals("http://a.com/5", scheduler.next(1000));
+    assertNull(scheduler.next(1000));
+
+    // a failed probe doubles the time till the next one
+    assertEquals(List.of("http://a.com/6"), scheduler.recordOutcome("http://a.com/5", false, 1000));
+    scheduler.release("http://a.com/5", 1000);
+    assertFalse(scheduler.add("http://a.com/7", 2999));
+    assertTrue(scheduler.add("http://a.com/7", 3000));
+    assertEquals("http://a.com/7", scheduler.next(3000));
+    assertEquals(List.of(), scheduler.recordOutcome("http://a.com/7", true, 3000));
+    scheduler.release("http://a.com/7", 3000);
+    assertTrue(scheduler.add("http://a.com/8", 3000));
+    assertTrue(scheduler.add("http://a.com/9", 3000));
+    assertEquals("http://a.com/8", scheduler.next(3000));
+    assertEquals("http://a.com/9", scheduler.next(3000));
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+  @Test
+  void bucketsCoverEveryValue() {
+    long previous = -1;
+    for (long value = 0; value < 1_000_000; value++) {
+      int index = LatencyHistogram.indexOf(value);
+      assertTrue(index >= previous);
+      assertTrue(Math.abs(LatencyHistogram.valueOf(index) - value) <= value / 64);
+      previous = index;
+    }
+    assertTrue(LatencyHistogram.indexOf(Long.MAX_VALUE) > previous);
+  }
+
+  @Test
+  void reportsPercentilesWithinPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 10_000; value++) {
+      histogram.record(value * 1000);
+    }
+    assertEquals(10_000, histogram.getCount());
+    assertEquals(10_000_000, histogram.getMax());
+    assertEquals(5_000_500, histogram.getMean(), 1);
+    assertEquals(5_000_000, histogram.getPercentile(50), 5_000_000 / 64);
+    assertEquals(9_900_000, histogram.getPercentile(99), 9_900_000 / 64);
+    assertEquals(10_000_000, histogram.getPercentile(100));
+  }
+
+  @Test
+  void reportsZeroWhenEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentile(99));
+    assertEquals(0, histogram.getMean());
+  }
+
+  @Test
+  void countsEveryValueUnderContention() throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      Random random = new Random(t);
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 100_000; i++) {
+          histogram.record(random.nextInt(1_000_000_000));
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(800_000, histogram.getCount());
+  }
+}
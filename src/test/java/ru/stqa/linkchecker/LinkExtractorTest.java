@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LinkExtractorTest {
+
+  private static final Path WEB = Paths.get("src/test/resources/web");
+
+  private final LinkExtractor jsoup = new JsoupLinkExtractor();
+  private final LinkExtractor streaming = new StreamingLinkExtractor();
+
+  @Test
+  void streamingExtractorFindsTheSameLinksAsJsoupOnTestPages() throws IOException {
+    List<Path> pages;
+    try (Stream<Path> files = Files.walk(WEB)) {
+      pages = files.filter(p -> p.toString().endsWith(".html")).collect(Collectors.toList());
+    }
+    for (Path page : pages) {
+      String text = new String(Files.readAllBytes(page), StandardCharsets.UTF_8);
+      String url = "http://localhost/" + WEB.relativize(page).toString().replace('\\', '/');
+      assertSameLinks(text, url);
+    }
+  }
+
+  @Test
+  void streamingExtractorFindsTheSameLinksAsJsoupOnTrickyMarkup() throws IOException {
+    String url = "http://localhost/dir/page.html";
+    assertSameLinks("<A HREF=Upper.html>x</A><a href='single.html'><a href=\"double.html\">", url);
+    assertSameLinks("<!-- <a href=commented.html> --><a href=after.html>", url);
+    assertSameLinks("<!--><a href=empty_comment.html><!---><a href=dashes.html>", url);
+    assertSameLinks("<!DOCTYPE html><?xml version=\"1.0\"?><a href=after_declaration.html>", url);
+    assertSameLinks("<script>document.write('<a href=scripted.html>')</script><a href=real.html>", url);
+    assertSameLinks("<style>a[href='<a href=styled.html>']{}</style><title><a href=titled.html></title>", url);
+    assertSameLinks("<a href=\"a.html?x=1&amp;y=2\"><a href=\"b.html?x=1&y=2\"><a href='&#99;.html'>", url);
+    assertSameLinks("<a href=\"q.html?a=1&copy=2\"><a href=\"r.html?a=1&lt;\"><a href=\"s.html?&#x41;\">", url);
+    assertSameLinks("<link href=before_base.css><base href=\"/other/\"><a href=after_base.html>", url);
+    assertSameLinks("<base href=\"http://example.com/x/\"><base href=\"/ignored/\"><a href=y.html>", url);
+    assertSameLinks("<a href=\"\">self</a><a name=anchor></a><a href=\"#top\">", url);
+    assertSameLinks("<img src = spaced.png >", url);
+    assertSameLinks("<video src=v.mp4 poster=p.png><source src=s.mp4 srcset=s.png><track src=t.vtt></video>", url);
+    assertSameLinks("<form action=f.html><input src=i.png formaction=fa.html><button formaction=b.html>", url);
+    assertSameLinks("<object data=o.swf></object><embed src=e.swf><iframe src=i.html><a href=inner.html></iframe>", url);
+    assertSameLinks("<image src=image.png><svg><image href=svg.png></image></svg><image src=after_svg.png>", url);
+    assertSameLinks("<a href=\"unfinished.html\"", url);
+    assertSameLinks("<a href=ok.html>< a href=not_a_tag.html><<a href=double_lt.html>", url);
+    assertSameLinks("<a href=\"mailto:someone@example.com\"><a href=\"javascript:void(0)\"><a href=\"//cdn.example.com/x.js\">", url);
+  }
+
+  @Test
+  void streamingExtractorTakesFirstOfDuplicatedAttributes() throws IOException {
+    // the answer of jsoup depends on its version, so the extractors are not compared here
+    assertEquals(Set.of("http://localhost/dir/first.html"),
+      streaming.extract(new StringReader("<a href=first.html href=second.html>"), "http://localhost/dir/page.html"));
+  }
+
+  private void assertSameLinks(String text, String url) throws IOException {
+    Set<String> expected = jsoup.extract(new StringReader(text), url);
+    assertEquals(expected, streaming.extract(new StringReader(text), url), url + ": " + text);
+  }
+}
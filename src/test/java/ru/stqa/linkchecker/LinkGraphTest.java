@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinkGraphTest {
+
+  @Test
+  void servesLinksFromDictionary() {
+    LinkGraph graph = new LinkGraph();
+    Set<String> links = graph.setLinks("http://localhost/index.html",
+      Set.of("http://localhost/a.html", "http://localhost/b.html"));
+    assertEquals(Set.of("http://localhost/a.html", "http://localhost/b.html"), links);
+    assertTrue(links.contains("http://localhost/a.html"));
+    assertFalse(links.contains("http://localhost/index.html"));
+    assertFalse(links.contains("http://localhost/unknown.html"));
+    assertThrows(UnsupportedOperationException.class, () -> links.add("http://localhost/c.html"));
+  }
+
+  @Test
+  void storesEachUrlOnce() {
+    LinkGraph graph = new LinkGraph();
+    Set<String> first = graph.setLinks("http://localhost/a.html", Set.of(new String("http://localhost/menu.html")));
+    Set<String> second = graph.setLinks("http://localhost/b.html", Set.of(new String("http://localhost/menu.html")));
+    assertSame(first.iterator().next(), second.iterator().next());
+  }
+
+  @Test
+  void findsReferrers() {
+    LinkGraph graph = new LinkGraph();
+    graph.setLinks("http://localhost/a.html", Set.of("http://localhost/menu.html", "http://localhost/b.html"));
+    graph.setLinks("http://localhost/b.html", Set.of("http://localhost/menu.html"));
+    assertEquals(Set.of("http://localhost/a.html", "http://localhost/b.html"), graph.referrers("http://localhost/menu.html"));
+    assertEquals(Set.of("http://localhost/a.html"), graph.referrers("http://localhost/b.html"));
+    assertEquals(Set.of(), graph.referrers("http://localhost/a.html"));
+    assertEquals(Set.of(), graph.referrers("http://localhost/unknown.html"));
+  }
+
+  @Test
+  void replacesLinksOfPage() {
+    LinkGraph graph = new LinkGraph();
+    graph.setLinks("http://localhost/a.html", Set.of("http://localhost/b.html", "http://localhost/c.html"));
+    graph.setLinks("http://localhost/a.html", Set.of("http://localhost/c.html"));
+    assertEquals(Set.of(), graph.referrers("http://localhost/b.html"));
+    assertEquals(Set.of("http://localhost/a.html"), graph.referrers("http://localhost/c.html"));
+    graph.setLinks("http://localhost/a.html", Set.of());
+    assertEquals(Set.of(), graph.referrers("http://localhost/c.html"));
+  }
+
+  @Test
+  void growsBeyondInitialCapacity() {
+    LinkGraph graph = new LinkGraph();
+    for (int i = 0; i < 10_000; i++) {
+      graph.setLinks("http://localhost/page" + i + ".html", Set.of("http://localhost/page" + (i + 1) + ".html", "http://localhost/index.html"));
+    }
+    assertEquals(10_000, graph.referrers("http://localhost/index.html").size());
+    assertEquals(Set.of("http://localhost/page4999.html"), graph.referrers("http://localhost/page5000.html"));
+  }
+
+  @Test
+  void acceptsPagesFromManyThreads() throws InterruptedException {
+    LinkGraph graph = new LinkGraph();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      int thread = t;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 1000; i++) {
+          Set<String> links = new HashSet<>();
+          links.add("http://localhost/index.html");
+          links.add("http://localhost/page" + (i + 1) + ".html");
+          graph.setLinks("http://localhost/t" + thread + "/page" + i + ".html", links);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(8000, graph.referrers("http://localhost/index.html").size());
+    assertEquals(8, graph.referrers("http://localhost/page1.html").size());
+  }
+}
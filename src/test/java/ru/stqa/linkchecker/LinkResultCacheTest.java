@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinkResultCacheTest {
+
+  private static final long HOUR = 60 * 60 * 1000L;
+
+  @Test
+  void keepsWorkingLinksLongerThanBrokenOnes() {
+    LinkResultCache cache = new LinkResultCache(24 * HOUR, HOUR, 100);
+    cache.put(PageInfo.done("http://example.com/").httpStatus(200).contentType("text/html").build(), 0);
+    cache.put(PageInfo.done("http://example.com/missing").httpStatus(404).build(), 0);
+    cache.put(PageInfo.broken("http://unknown.example.com/").message("unknown host").build(), 0);
+
+    PageInfo working = cache.get("http://example.com/", 2 * HOUR);
+    assertEquals(ScanStatus.DONE, working.getStatus());
+    assertEquals(200, working.getHttpStatus());
+    assertEquals("text/html", working.getContentType());
+    assertNull(cache.get("http://example.com/missing", 2 * HOUR));
+    assertNull(cache.get("http://unknown.example.com/", 2 * HOUR));
+    assertNull(cache.get("http://example.com/", 24 * HOUR));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  void dropsLeastRecentlyUsedLinksWhenFull() {
+    LinkResultCache cache = new LinkResultCache(HOUR, HOUR, 2);
+    cache.put(PageInfo.done("http://example.com/a").httpStatus(200).build(), 0);
+    cache.put(PageInfo.done("http://example.com/b").httpStatus(200).build(), 0);
+    assertNotNull(cache.get("http://example.com/a", 0));
+    cache.put(PageInfo.done("http://example.com/c").httpStatus(200).build(), 0);
+
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get("http://example.com/a", 0));
+    assertNull(cache.get("http://example.com/b", 0));
+    assertNotNull(cache.get("http://example.com/c", 0));
+  }
+
+  @Test
+  void keepsFreshLinksBetweenScans() throws IOException {
+    ScanSettings settings = new ScanSettings("http://localhost/", 1).linkCacheErrorTtl(HOUR);
+    Path file = Files.createTempFile("links", ".bin");
+    LinkResultCache cache = LinkResultCache.load(file.resolveSibling(file.getFileName() + ".absent"), settings);
+    long now = System.currentTimeMillis();
+    cache.put(PageInfo.done("http://example.com/").httpStatus(200).build(), now);
+    cache.put(PageInfo.broken("http://example.com/old").message("timeout").build(), now - 2 * HOUR);
+    cache.put(PageInfo.broken("http://example.com/new").message("timeout").build(), now);
+    cache.save(file);
+
+    LinkResultCache loaded = LinkResultCache.load(file, settings);
+    assertEquals(2, loaded.size());
+    assertEquals(200, loaded.get("http://example.com/").getHttpStatus());
+    assertEquals("timeout", loaded.get("http://example.com/new").getMessage());
+    assertNull(loaded.get("http://example.com/old"));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScanEventBusTest {
+
+  @Test
+  void deliversAllEventsInOrderInBatches() throws InterruptedException {
+    ScanEventBus bus = new ScanEventBus(4);
+    ConcurrentLinkedQueue<List<PageInfo>> batches = new ConcurrentLinkedQueue<>();
+    bus.subscribe(batches::add, OverflowPolicy.BLOCK);
+    for (int i = 0; i < 100; i++) {
+      bus.publish(PageInfo.done("http://localhost/" + i).build());
+    }
+    bus.close();
+
+    List<String> urls = batches.stream().flatMap(List::stream).map(PageInfo::getUrl).collect(Collectors.toList());
+    assertEquals(100, urls.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals("http://localhost/" + i, urls.get(i));
+    }
+    assertTrue(batches.stream().allMatch(batch -> batch.size() <= 4));
+  }
+
+  @Test
+  void dropsEventsOfPagesInProgressWhenListenerLags() throws InterruptedException {
+    ScanEventBus bus = new ScanEventBus(4);
+    CountDownLatch release = new CountDownLatch(1);
+    ConcurrentLinkedQueue<PageInfo> events = new ConcurrentLinkedQueue<>();
+    bus.subscribe(batch -> {
+      await(release);
+      events.addAll(batch);
+    }, OverflowPolicy.DROP_PROGRESS);
+    for (int i = 0; i < 10; i++) {
+      bus.publish(PageInfo.inProgress("http://localhost/" + i).build());
+    }
+    for (int i = 0; i < 3; i++) {
+      bus.publish(PageInfo.done("http://localhost/" + i).build());
+    }
+    release.countDown();
+    bus.close();
+
+    assertTrue(bus.getDropped() > 0);
+    assertEquals(3, events.stream().filter(page -> page.getStatus() == ScanStatus.DONE).count());
+  }
+
+  @Test
+  void replacesUndeliveredEventsOfTheSameUrlWhenListenerLags() throws InterruptedException {
+    ScanEventBus bus = new ScanEventBus(2);
+    CountDownLatch taken = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ConcurrentLinkedQueue<PageInfo> events = new ConcurrentLinkedQueue<>();
+    bus.subscribe(batch -> {
+      taken.countDown();
+      await(release);
+      events.addAll(batch);
+    }, OverflowPolicy.COALESCE);
+    // the listener holds the first event, the next two fill the buffer up
+    bus.publish(PageInfo.inProgress("http://localhost/0").build());
+    await(taken);
+    bus.publish(PageInfo.inProgress("http://localhost/1").build());
+    bus.publish(PageInfo.inProgress("http://localhost/2").build());
+    bus.publish(PageInfo.done("http://localhost/1").build());
+    bus.publish(PageInfo.done("http://localhost/2").build());
+    release.countDown();
+    bus.close();
+
+    assertEquals(List.of(ScanStatus.IN_PROGRESS, ScanStatus.DONE, ScanStatus.DONE),
+      events.stream().map(PageInfo::getStatus).collect(Collectors.toList()));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ScanJournalTest {
+
+  @Test
+  void restoresDonePagesAndPendingUrls() throws IOException {
+    Path file = Files.createTempFile("scan", ".journal");
+    try (ScanJournal journal = ScanJournal.create(file)) {
+      journal.queued("http://localhost/a.html");
+      journal.queued("http://localhost/b.html");
+      journal.queued("http://localhost/c.html");
+      journal.pageDone(PageInfo.done("http://localhost/a.html").httpStatus(200).contentType("text/html")
+        .links(Set.of("http://localhost/b.html", "http://localhost/c.html"))
+        .anchors(Set.of("http://localhost/c.html#top")).build());
+      journal.pageDone(PageInfo.broken("http://localhost/b.html").message("Connection refused").build());
+    }
+
+    List<PageInfo> pages = new ArrayList<>();
+    List<String> pending = new ArrayList<>();
+    ScanJournal.resume(file, pages::add, pending::add).close();
+
+    assertEquals(2, pages.size());
+    PageInfo a = pages.get(0);
+    assertEquals("http://localhost/a.html", a.getUrl());
+    assertEquals(ScanStatus.DONE, a.getStatus());
+    assertEquals(200, a.getHttpStatus());
+    assertEquals("text/html", a.getContentType());
+    assertEquals(Set.of("http://localhost/b.html", "http://localhost/c.html"), a.getLinks());
+    assertEquals(Set.of("http://localhost/c.html#top"), a.getAnchors());
+    PageInfo b = pages.get(1);
+    assertEquals(ScanStatus.BROKEN, b.getStatus());
+    assertEquals("Connection refused", b.getMessage());
+    assertNull(b.getContentType());
+    assertEquals(List.of("http://localhost/c.html"), pending);
+  }
+
+  @Test
+  void dropsRecordCutShortByCrashAndAppendsAfterLastCompleteOne() throws IOException {
+    Path file = Files.createTempFile("scan", ".journal");
+    try (ScanJournal journal = ScanJournal.create(file)) {
+      journal.queued("http://localhost/a.html");
+      journal.queued("http://localhost/b.html");
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 3);
+    }
+
+    List<String> pending = new ArrayList<>();
+    try (ScanJournal journal = ScanJournal.resume(file, page -> {}, pending::add)) {
+      journal.queued("http://localhost/c.html");
+    }
+    assertEquals(List.of("http://localhost/a.html"), pending);
+
+    pending.clear();
+    ScanJournal.resume(file, page -> {}, pending::add).close();
+    assertEquals(List.of("http://localhost/a.html", "http://localhost/c.html"), pending);
+  }
+
+  @Test
+  void restoresLinksOfPageWhenJournalEndsRightAfterIt() throws IOException {
+    Path file = Files.createTempFile("scan", ".journal");
+    try (ScanJournal journal = ScanJournal.create(file)) {
+      journal.queued("http://localhost/a.html");
+      // the scan is killed before the links of the page are recorded
+      journal.pageDone(PageInfo.done("http://localhost/a.html").httpStatus(200)
+        .links(Set.of("http://localhost/a.html", "http://localhost/b.html")).build());
+    }
+
+    List<String> pending = new ArrayList<>();
+    ScanJournal.resume(file, page -> {}, pending::add).close();
+    assertEquals(List.of("http://localhost/b.html"), pending);
+  }
+
+  @Test
+  void reportsWriteFailureOnClose() throws IOException {
+    // a device that fails every write, where there is one
+    Path full = Paths.get("/dev/full");
+    assumeTrue(Files.isWritable(full));
+    ScanJournal journal = ScanJournal.create(full);
+    journal.pageDone(PageInfo.done("http://localhost/page.html").httpStatus(200).build());
+    assertThrows(IOException.class, journal::close);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScanReportTest {
+
+  private ScanResults results() {
+    ScanResults results = new ScanResults();
+    results.addPageInfo(PageInfo.done("http://localhost/index.html").httpStatus(200)
+      .links(Set.of("http://localhost/missing.html", "http://localhost/error.html", "http://localhost/?a=1&b=2"))
+      .build());
+    results.addPageInfo(PageInfo.done("http://localhost/other.html").httpStatus(200)
+      .links(Set.of("http://localhost/missing.html"))
+      .build());
+    results.addPageInfo(PageInfo.done("http://localhost/missing.html").httpStatus(404).build());
+    results.addPageInfo(PageInfo.done("http://localhost/error.html").httpStatus(500).build());
+    results.addPageInfo(PageInfo.broken("http://localhost/?a=1&b=2").message("Connection refused").build());
+    return results;
+  }
+
+  @Test
+  void listsProblemPagesWithReferrers() throws IOException {
+    Path report = Files.createTempFile("report", ".html");
+    new ScanReport(results()).saveTo(report.toString());
+    String html = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+
+    assertTrue(html.contains("<h2>Unavailable pages</h2>"));
+    assertTrue(html.contains("<h2>4xx error</h2>"));
+    assertTrue(html.contains("<h2>5xx error</h2>"));
+    assertTrue(html.contains("<a href=\"http://localhost/?a=1&amp;b=2\">"));
+    assertTrue(html.contains("Connection refused"));
+    String missingRow = html.substring(html.indexOf("<tr><td><a href=\"http://localhost/missing.html\">"));
+    missingRow = missingRow.substring(0, missingRow.indexOf("</tr>"));
+    assertTrue(missingRow.contains("<td>404</td>"));
+    assertTrue(missingRow.contains("http://localhost/index.html"));
+    assertTrue(missingRow.contains("http://localhost/other.html"));
+    assertFalse(html.contains("Page 1 of"));
+  }
+
+  @Test
+  void splitsLargeReportIntoPages() throws IOException {
+    Path dir = Files.createTempDirectory("report");
+    Path report = dir.resolve("report.html");
+    new ScanReport(results()).pageSize(2).saveTo(report.toString());
+
+    String first = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+    String second = new String(Files.readAllBytes(dir.resolve("report-2.html")), StandardCharsets.UTF_8);
+    assertFalse(Files.exists(dir.resolve("report-3.html")));
+    assertTrue(first.contains("Page 1 of 2"));
+    assertTrue(first.contains("<a href=\"report-2.html\">2</a>"));
+    assertTrue(second.contains("<a href=\"report.html\">1</a>"));
+    assertTrue(first.contains("Unavailable pages") && first.contains("4xx error"));
+    assertTrue(second.contains("5xx error") && !second.contains("4xx error"));
+  }
+
+  @Test
+  void writesEmptyReportWhenThereAreNoProblems() throws IOException {
+    Path report = Files.createTempFile("report", ".html");
+    ScanResults results = new ScanResults();
+    results.addPageInfo(PageInfo.done("http://localhost/index.html").httpStatus(200).build());
+    new ScanReport(results).saveTo(report.toString());
+    String html = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+    assertTrue(html.contains("<h1>Link Checker Report</h1>"));
+    assertFalse(html.contains("<table>"));
+  }
+}
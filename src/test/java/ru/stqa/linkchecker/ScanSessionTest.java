@@ -19,10 +19,20 @@ package ru.stqa.linkchecker;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ScanSessionTest {
 
@@ -33,12 +43,18 @@ class ScanSessionTest {
   }
 
   private ScanResults scan(String startPage) {
-    ScanSettings settings = null;
+    return scan(settings(startPage));
+  }
+
+  private ScanSettings settings(String startPage) {
     try {
-      settings = new ScanSettings(startPage, 10);
+      return new ScanSettings(startPage, 10);
     } catch (MalformedURLException e) {
       throw new RuntimeException(e);
     }
+  }
+
+  private ScanResults scan(ScanSettings settings) {
     ScanSession session = new ScanSession(settings);
 
     Thread t = new Thread(session);
@@ -75,6 +91,16 @@ class ScanSessionTest {
     assert200(scan(testServer.page("duplicated_link_page.html")), 2);
   }
 
+  @Test
+  void requestsEachPageOnceWhateverLinksToItLookLike() {
+    String startPage = testServer.page("page_with_fragment_links.html");
+    ScanResults results = scan(startPage);
+    assert200(results, 3);
+    assertEquals(
+      Set.of(testServer.page("simple_page.html#top"), testServer.page("simple_page.html#faq")),
+      results.getPageInfo(startPage).getAnchors());
+  }
+
   @Test
   void canScanPageWithSelfReferencingLinks() {
     assert200(scan(testServer.page("self_link_page.html")), 1);
@@ -296,6 +322,185 @@ class ScanSessionTest {
       .forEach(s -> assert200(scan(testServer.page(s)), 2));
   }
 
+  @Test
+  void canScanWithAsyncTransport() {
+    assert200(scan(settings(testServer.page("loop_link_page1.html")).transportType(TransportType.ASYNC)), 3);
+    assert200(scan(settings(testServer.page("page_with_video_poster.html")).transportType(TransportType.ASYNC)), 3);
+    assert200and404(scan(settings(testServer.page("page_with_broken_map.html")).transportType(TransportType.ASYNC)), 2, 1);
+  }
+
+  @Test
+  void findsTheSameAsPooledThreadsWithVirtualThreads() {
+    // on a JVM without virtual threads the session falls back to a cached pool bounded by the permits
+    for (String page : new String[]{"loop_link_page1.html", "page_with_broken_map.html", "perf_page.html"}) {
+      String startPage = testServer.page(page);
+      assertEquals(statuses(scan(settings(startPage))), statuses(scan(settings(startPage).virtualThreads(true))), page);
+    }
+    assert200(scan(settings(testServer.page("loop_link_page1.html")).virtualThreads(true)), 3);
+  }
+
+  @Test
+  void canScanWithAdaptiveConcurrency() {
+    ScanSession session = new ScanSession(settings(testServer.page("loop_link_page1.html")).adaptiveConcurrency(true));
+    session.run();
+    assert200(session.getResults(), 3);
+    assertTrue(session.getMetrics().getConcurrencyLimit() > 0);
+    assertTrue(session.getMetrics().getHostConcurrencyLimits().size() > 0);
+  }
+
+  @Test
+  void keepsConcurrencyLimitOnMixedSiteWithFailingHost() {
+    ScanSession session = new ScanSession(settings(testServer.page("faults/mixed.html")).adaptiveConcurrency(true));
+    assertTimeoutPreemptively(Duration.ofSeconds(20), session::run);
+    ScanResults results = session.getResults();
+    assertEquals(31, results.getScannedPages().size());
+    assertEquals(200, results.getPageInfo(testServer.page("faults/ok.html?9")).getHttpStatus());
+    assertEquals(ScanStatus.BROKEN, results.getPageInfo("http://127.0.0.1:1/page9.html").getStatus());
+    // neither slow pages nor the dead host are a reason to slow down the scan of a healthy site
+    assertEquals(10, session.getMetrics().getConcurrencyLimit());
+  }
+
+  @Test
+  void fallsBackToGetForHostThatRejectsHead() throws MalformedURLException {
+    int headRequests = FaultInjectionHandler.getHeadRequests();
+    // a single thread, so that the rejection is known before the next link is checked
+    ScanResults results = scan(new ScanSettings(testServer.page("faults/no_head_links.html"), 1));
+    assertEquals(6, results.getScannedPages().size());
+    assertEquals(6, results.getScannedPages().stream().filter(p -> p.getHttpStatus() == 200).count());
+    assertEquals(1, FaultInjectionHandler.getHeadRequests() - headRequests);
+  }
+
+  @Test
+  void canCheckExternalLinksWithGetRequests() {
+    assert200(scan(settings(testServer.page("subdir/page_with_video.html")).headRequests(false)), 2);
+    assert200(scan(settings(testServer.page("subdir/page_with_map.html")).headRequests(false)), 3);
+  }
+
+  @Test
+  void canResumeScanFromJournal() throws IOException {
+    String journal = Files.createTempFile("scan", ".journal").toString();
+    String startPage = testServer.page("loop_link_page1.html");
+    assert200(scan(settings(startPage).journal(journal)), 3);
+    assert200(scan(settings(startPage).journal(journal).resume(true)), 3);
+  }
+
+  @Test
+  void canRescanWithConditionalRequests() throws IOException {
+    Path validators = Files.createTempFile("validators", ".bin");
+    Files.delete(validators);
+    String startPage = testServer.page("multi_link_page.html");
+    assert200(scan(settings(startPage).validatorStore(validators.toString())), 3);
+    assertTrue(Files.exists(validators));
+    ScanResults rescan = scan(settings(startPage).validatorStore(validators.toString()));
+    assert200(rescan, 3);
+    assertEquals(2, rescan.getPageInfo(startPage).getLinks().size());
+  }
+
+  @Test
+  void keepsAnchorsOfPagesThatDidNotChange() throws IOException {
+    Path validators = Files.createTempFile("validators", ".bin");
+    Files.delete(validators);
+    String startPage = testServer.page("page_with_fragment_links.html");
+    Set<String> anchors = Set.of(testServer.page("simple_page.html#top"), testServer.page("simple_page.html#faq"));
+    assertEquals(anchors, scan(settings(startPage).validatorStore(validators.toString())).getPageInfo(startPage).getAnchors());
+    // the page is not modified, it comes from the validator store
+    assertEquals(anchors, scan(settings(startPage).validatorStore(validators.toString())).getPageInfo(startPage).getAnchors());
+  }
+
+  @Test
+  void takesLinksCheckedByPreviousScanFromLinkCache() throws IOException {
+    Path links = Files.createTempFile("links", ".bin");
+    Files.delete(links);
+    // the page links outside of its base URL, so the links are only checked
+    String startPage = testServer.page("subdir/page_with_map.html");
+    ScanSession first = new ScanSession(settings(startPage).linkCache(links.toString()));
+    first.run();
+    assertEquals(3, first.getMetrics().getPhase(FetchPhase.TOTAL).getCount());
+    assertTrue(Files.exists(links));
+
+    ScanSession second = new ScanSession(settings(startPage).linkCache(links.toString()));
+    second.run();
+    assert200(second.getResults(), 3);
+    assertEquals(1, second.getMetrics().getPhase(FetchPhase.TOTAL).getCount());
+  }
+
+  @Test
+  void doesNotSpendHostRateOnCachedLinks() throws IOException {
+    Path links = Files.createTempFile("links", ".bin");
+    Files.delete(links);
+    String startPage = testServer.page("subdir/page_with_map.html");
+    new ScanSession(settings(startPage).linkCache(links.toString())).run();
+
+    // a request per second, two cached links would take two more seconds if they waited for the host
+    ScanSession second = new ScanSession(settings(startPage).linkCache(links.toString()).requestsPerSecondPerHost(1));
+    assertTimeoutPreemptively(Duration.ofSeconds(1), second::run);
+    assert200(second.getResults(), 3);
+  }
+
+  @Test
+  void recordsFetchMetrics() {
+    ScanSession session = new ScanSession(settings(testServer.page("multi_link_page.html")));
+    session.run();
+    ScanMetrics metrics = session.getMetrics();
+    assertEquals(3, metrics.getPhase(FetchPhase.TOTAL).getCount());
+    assertEquals(3, metrics.getPhase(FetchPhase.FIRST_BYTE).getCount());
+    assertEquals(3, metrics.getPhase(FetchPhase.PARSE).getCount());
+    assertTrue(metrics.getBytesDownloaded() > 0);
+    assertTrue(metrics.getConnectionsOpened() > 0);
+    assertEquals(3, metrics.getConnectionsOpened() + metrics.getConnectionsReused());
+  }
+
+  @Test
+  void finishesScanWithStalledHosts() {
+    String startPage = testServer.page("faults/index.html");
+    assertTimeoutPreemptively(Duration.ofSeconds(20), () ->
+      assertFaultsReported(scan(settings(startPage).socketTimeout(500).requestTimeout(1000))));
+  }
+
+  @Test
+  void finishesScanWithStalledHostsWithAsyncTransport() {
+    String startPage = testServer.page("faults/index.html");
+    assertTimeoutPreemptively(Duration.ofSeconds(20), () ->
+      assertFaultsReported(scan(settings(startPage).transportType(TransportType.ASYNC).requestTimeout(1000))));
+  }
+
+  @Test
+  void stopsScanWhenScanTimeIsOver() {
+    String startPage = testServer.page("faults/index.html");
+    assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+      ScanResults results = scan(settings(startPage).scanTimeout(1000));
+      assertEquals(ScanStatus.DONE, results.getPageInfo(startPage).getStatus());
+      assertEquals(ScanStatus.BROKEN, results.getPageInfo(testServer.page("faults/slow.html")).getStatus());
+      assertTrue(results.getScannedPages().stream().noneMatch(p -> p.getStatus() == ScanStatus.IN_PROGRESS));
+    });
+  }
+
+  @Test
+  void reportsLinksToDeadHostAsUnreachable() {
+    String startPage = testServer.page("page_with_dead_host_links.html");
+    assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+      ScanResults results = scan(settings(startPage).hostFailureThreshold(5));
+      assertEquals(9, results.getScannedPages().size());
+      for (int i = 1; i <= 8; i++) {
+        assertEquals(ScanStatus.BROKEN, results.getPageInfo("http://127.0.0.1:1/page" + i + ".html").getStatus());
+      }
+      assertTrue(results.getScannedPages().stream().anyMatch(p -> "Host unreachable".equals(p.getMessage())));
+    });
+  }
+
+  private void assertFaultsReported(ScanResults results) {
+    assertEquals(200, results.getPageInfo(testServer.page("faults/index.html")).getHttpStatus());
+    assertEquals(200, results.getPageInfo(testServer.page("faults/ok.html")).getHttpStatus());
+    for (String page : new String[]{"slow.html", "trickle.html", "reset.html", "endless.html"}) {
+      assertEquals(ScanStatus.BROKEN, results.getPageInfo(testServer.page("faults/" + page)).getStatus(), page);
+    }
+    assertNotEquals(200, results.getPageInfo(testServer.page("faults/loop1.html")).getHttpStatus());
+  }
+
+  private static Map<String, Integer> statuses(ScanResults results) {
+    return results.getScannedPages().stream().collect(Collectors.toMap(PageInfo::getUrl, PageInfo::getHttpStatus));
+  }
+
   private void assert200(ScanResults results, int count) {
     assertEquals(count, results.getScannedPages().size());
     assertEquals(count, results.getScannedPages().stream().filter(p -> p.getHttpStatus() == 200).count());
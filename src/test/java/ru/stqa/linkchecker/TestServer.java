@@ -38,7 +38,7 @@ public class TestServer {
     handler.setDirectoriesListed(true);
     handler.setResourceBase("src/test/resources/web");
     HandlerList handlers = new HandlerList();
-    handlers.setHandlers(new Handler[]{handler, new DefaultHandler()});
+    handlers.setHandlers(new Handler[]{new FaultInjectionHandler(), handler, new DefaultHandler()});
     jetty.setHandler(handlers);
     try {
       jetty.start();
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.MalformedURLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UrlCanonicalizerTest {
+
+  private final UrlCanonicalizer canonicalizer = canonicalizer(new ScanSettings("http://localhost/", 1));
+
+  UrlCanonicalizerTest() throws MalformedURLException {
+  }
+
+  private static UrlCanonicalizer canonicalizer(ScanSettings settings) {
+    return new UrlCanonicalizer(settings);
+  }
+
+  @Test
+  void leavesCanonicalUrlsAsTheyAre() {
+    assertEquals("http://localhost/page.html?a=1&b=2", canonicalizer.canonicalize("http://localhost/page.html?a=1&b=2"));
+    assertEquals("http://localhost:8080/", canonicalizer.canonicalize("http://localhost:8080/"));
+    assertEquals("mailto:someone@localhost", canonicalizer.canonicalize("mailto:someone@localhost"));
+  }
+
+  @Test
+  void stripsFragments() {
+    assertEquals("http://localhost/page.html", canonicalizer.canonicalize("http://localhost/page.html#top"));
+    assertEquals("http://localhost/page.html?a=1", canonicalizer.canonicalize("http://localhost/page.html?a=1#top"));
+  }
+
+  @Test
+  void keepsFragmentsIfAsked() throws MalformedURLException {
+    UrlCanonicalizer keeping = canonicalizer(new ScanSettings("http://localhost/", 1).stripFragments(false));
+    assertEquals("http://localhost/page.html#top", keeping.canonicalize("http://LOCALHOST/page.html#top"));
+  }
+
+  @Test
+  void lowercasesSchemeAndHostAndDropsDefaultPorts() {
+    assertEquals("http://localhost/Page.html", canonicalizer.canonicalize("HTTP://LocalHost:80/Page.html"));
+    assertEquals("https://localhost/", canonicalizer.canonicalize("https://localhost:443"));
+    assertEquals("https://localhost:80/", canonicalizer.canonicalize("https://localhost:80/"));
+    assertEquals("http://user@[::1]:8080/", canonicalizer.canonicalize("http://user@[::1]:8080/"));
+  }
+
+  @Test
+  void removesDotSegments() {
+    assertEquals("http://localhost/a/c.html", canonicalizer.canonicalize("http://localhost/a/./b/../c.html"));
+    assertEquals("http://localhost/a/", canonicalizer.canonicalize("http://localhost/a/b/.."));
+    assertEquals("http://localhost/page.html", canonicalizer.canonicalize("http://localhost/../../page.html"));
+    assertEquals("http://localhost/a/page.html", canonicalizer.canonicalize("http://localhost/a/%2E/page.html"));
+  }
+
+  @Test
+  void normalizesPercentEncoding() {
+    assertEquals("http://localhost/~user/a%2Fb%C3%A9?q=%3D", canonicalizer.canonicalize("http://localhost/%7euser/a%2fb%c3%a9?q=%3d"));
+    assertEquals("http://localhost/100%", canonicalizer.canonicalize("http://localhost/100%"));
+  }
+
+  @Test
+  void removesIgnoredAndSortsQueryParameters() throws MalformedURLException {
+    UrlCanonicalizer custom = canonicalizer(new ScanSettings("http://localhost/", 1)
+      .sortQueryParameters(true)
+      .ignoredQueryParameters(List.of("utm_*", "sessionid")));
+    assertEquals("http://localhost/?a=1&b=2&b=1", custom.canonicalize("http://localhost/?b=2&utm_source=x&a=1&sessionid=5&b=1"));
+    assertEquals("http://localhost/page.html", custom.canonicalize("http://localhost/page.html?utm_medium=mail"));
+  }
+
+  @Test
+  void lowercasesPathsOnCaseInsensitiveHosts() throws MalformedURLException {
+    UrlCanonicalizer custom = canonicalizer(new ScanSettings("http://localhost/", 1)
+      .caseInsensitiveHosts(List.of("LocalHost")));
+    assertEquals("http://localhost/page.html?Q=A", custom.canonicalize("http://localhost/PAGE.html?Q=A"));
+    assertEquals("http://example.com/PAGE.html", custom.canonicalize("http://example.com/PAGE.html"));
+  }
+
+  @Test
+  void recordsLinksToFragments() {
+    Set<String> anchors = new HashSet<>();
+    Set<String> links = canonicalizer.canonicalize(
+      Set.of("http://localhost/page.html", "http://localhost/page.html#top", "http://localhost/page.html#"), anchors);
+    assertEquals(Set.of("http://localhost/page.html"), links);
+    assertEquals(Set.of("http://localhost/page.html#top"), anchors);
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UrlFingerprintSetTest {
+
+  @Test
+  void addsEachUrlOnlyOnce() {
+    UrlFingerprintSet set = new UrlFingerprintSet();
+    assertTrue(set.add("http://localhost/page.html"));
+    assertFalse(set.add("http://localhost/page.html"));
+    assertTrue(set.contains("http://localhost/page.html"));
+    assertFalse(set.contains("http://localhost/other.html"));
+    assertEquals(1, set.size());
+  }
+
+  @Test
+  void growsBeyondInitialCapacity() {
+    UrlFingerprintSet set = new UrlFingerprintSet();
+    for (int i = 0; i < 100_000; i++) {
+      assertTrue(set.add("http://localhost/page" + i + ".html"));
+    }
+    for (int i = 0; i < 100_000; i++) {
+      assertTrue(set.contains("http://localhost/page" + i + ".html"));
+    }
+    assertEquals(100_000, set.size());
+  }
+
+  @Test
+  void acceptsEveryUrlExactlyOnceUnderContention() throws InterruptedException {
+    UrlFingerprintSet set = new UrlFingerprintSet();
+    AtomicInteger added = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 50_000; i++) {
+          if (set.add("http://localhost/page" + i + ".html")) {
+            added.incrementAndGet();
+          }
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(50_000, added.get());
+    assertEquals(50_000, set.size());
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValidatorStoreTest {
+
+  @Test
+  void keepsValidatorsAndLinksBetweenScans() throws IOException {
+    Path file = Files.createTempFile("validators", ".bin");
+    ValidatorStore store = ValidatorStore.load(file.resolveSibling(file.getFileName() + ".absent"));
+    PageInfo page = PageInfo.done("http://localhost/a.html").httpStatus(200).contentType("text/html")
+      .links(Set.of("http://localhost/b.html")).anchors(Set.of("http://localhost/b.html#top")).build();
+    store.update(page.getUrl(), response(200, Map.of("ETag", "\"abc\"", "Last-Modified", "Mon, 01 Jan 2018 00:00:00 GMT")), page);
+    store.update("http://localhost/gone.html", response(200, Map.of("ETag", "\"def\"")), page);
+    store.update("http://localhost/plain.html", response(200, Collections.emptyMap()), page);
+    store.save(file, url -> !url.contains("gone"));
+
+    ValidatorStore loaded = ValidatorStore.load(file);
+    assertNull(loaded.get("http://localhost/gone.html"));
+    assertNull(loaded.get("http://localhost/plain.html"));
+    ValidatorStore.Entry entry = loaded.get("http://localhost/a.html");
+    assertEquals(Map.of("If-None-Match", "\"abc\"", "If-Modified-Since", "Mon, 01 Jan 2018 00:00:00 GMT"),
+      entry.conditionalHeaders());
+    PageInfo restored = entry.toPageInfo("http://localhost/a.html");
+    assertEquals(200, restored.getHttpStatus());
+    assertEquals("text/html", restored.getContentType());
+    assertEquals(Set.of("http://localhost/b.html"), restored.getLinks());
+    assertEquals(Set.of("http://localhost/b.html#top"), restored.getAnchors());
+  }
+
+  @Test
+  void forgetsPagesThatLostTheirValidators() {
+    ValidatorStore store = new ValidatorStore();
+    PageInfo page = PageInfo.done("http://localhost/a.html").httpStatus(200).build();
+    store.update(page.getUrl(), response(200, Map.of("ETag", "\"abc\"")), page);
+    assertNotNull(store.get(page.getUrl()));
+    store.update(page.getUrl(), response(200, Collections.emptyMap()), page);
+    assertNull(store.get(page.getUrl()));
+  }
+
+  private static FetchResponse response(int status, Map<String, String> headers) {
+    return new FetchResponse() {
+      @Override
+      public int getStatusCode() {
+        return status;
+      }
+
+      @Override
+      public List<String> getHeaders(String name) {
+        return headers.containsKey(name) ? List.of(headers.get(name)) : Collections.emptyList();
+      }
+
+      @Override
+      public Reader getBodyReader() {
+        return new StringReader("");
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+}
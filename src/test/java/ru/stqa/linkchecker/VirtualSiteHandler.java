@@ -0,0 +1,210 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongConsumer;
+
+/**
+ * Serves a generated site under /site/. The same settings always give the same pages, so it can be scanned
+ * repeatedly to compare crawler versions. Page 0 is the start page, every page links to a few pages of its own
+ * (that makes every page reachable), to the navigation pages shared by the whole site, and sometimes to a page
+ * that does not exist.
+ */
+public class VirtualSiteHandler extends AbstractHandler {
+
+  public static final String PREFIX = "/site/";
+
+  private static final String FILLER = "<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, "
+    + "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.</p>\n";
+
+  private int pageCount = 1000;
+  private int fanOut = 20;
+  private int navigationPages = 10;
+  private double duplicationRatio = 0.5;
+  private double brokenRatio = 0.01;
+  private int bodySize = 10 * 1024;
+  private long latencyMillis = 0;
+  private int hostCount = 1;
+  private LongConsumer requestTimes = nanos -> {};
+
+  public VirtualSiteHandler pageCount(int pageCount) {
+    this.pageCount = pageCount;
+    return this;
+  }
+
+  /**
+   * Number of links on every page.
+   */
+  public VirtualSiteHandler fanOut(int fanOut) {
+    this.fanOut = fanOut;
+    return this;
+  }
+
+  /**
+   * Share of links on a page that point to the navigation pages common to the whole site.
+   */
+  public VirtualSiteHandler duplicationRatio(double duplicationRatio) {
+    this.duplicationRatio = duplicationRatio;
+    return this;
+  }
+
+  /**
+   * Share of links that point to pages that do not exist.
+   */
+  public VirtualSiteHandler brokenRatio(double brokenRatio) {
+    this.brokenRatio = brokenRatio;
+    return this;
+  }
+
+  /**
+   * Approximate size of a page in bytes.
+   */
+  public VirtualSiteHandler bodySize(int bodySize) {
+    this.bodySize = bodySize;
+    return this;
+  }
+
+  /**
+   * Delay before each response.
+   */
+  public VirtualSiteHandler latencyMillis(long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+    return this;
+  }
+
+  /**
+   * Spreads the pages over several hosts, 127.0.0.1, 127.0.0.2 and so on, all of them served by this handler.
+   * Page N lives on host N % hostCount + 1 and links to pages on other hosts are absolute.
+   */
+  public VirtualSiteHandler hostCount(int hostCount) {
+    this.hostCount = hostCount;
+    return this;
+  }
+
+  /**
+   * Receives the time spent on every request in nanoseconds, including the delay and writing the body.
+   */
+  public VirtualSiteHandler requestTimes(LongConsumer requestTimes) {
+    this.requestTimes = requestTimes;
+    return this;
+  }
+
+  public int getPageCount() {
+    return pageCount;
+  }
+
+  @Override
+  public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+    throws IOException {
+    if (!target.startsWith(PREFIX)) {
+      return;
+    }
+    baseRequest.setHandled(true);
+    long start = System.nanoTime();
+    try {
+      respond(target, request.getLocalPort(), response);
+    } finally {
+      requestTimes.accept(System.nanoTime() - start);
+    }
+  }
+
+  private void respond(String target, int port, HttpServletResponse response) throws IOException {
+    int page = pageNumber(target.substring(PREFIX.length()));
+
+    if (latencyMillis > 0) {
+      try {
+        Thread.sleep(latencyMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    response.setContentType("text/html;charset=utf-8");
+    Writer out = response.getWriter();
+    if (page < 0) {
+      // a plain body instead of the jetty error page, that one has a link of its own
+      response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+      out.write("<html><body>Not found</body></html>\n");
+      return;
+    }
+    response.setStatus(HttpServletResponse.SC_OK);
+    out.write("<html><head><title>Page " + page + "</title></head><body>\n");
+    int written = 0;
+    for (String link : links(page)) {
+      if (hostCount > 1 && !link.startsWith("missing")) {
+        link = "http://" + host(pageNumber(link)) + ":" + port + PREFIX + link;
+      }
+      String line = "<p><a href=\"" + link + "\">" + link + "</a></p>\n";
+      out.write(line);
+      written += line.length();
+    }
+    while (written < bodySize) {
+      out.write(FILLER);
+      written += FILLER.length();
+    }
+    out.write("</body></html>\n");
+  }
+
+  /**
+   * Returns the links of a page relative to the site root, the order is stable.
+   */
+  public List<String> links(int page) {
+    Random random = new Random(page * 31L + 17);
+    int own = Math.max(1, (int) Math.round(fanOut * (1 - duplicationRatio)));
+    List<String> links = new ArrayList<>(fanOut);
+    for (int i = 0; i < fanOut; i++) {
+      if (random.nextDouble() < brokenRatio) {
+        links.add("missing" + page + "_" + i + ".html");
+      } else if (i < own) {
+        links.add(pageName((int) (((long) page * own + 1 + i) % pageCount)));
+      } else {
+        links.add(pageName(random.nextInt(Math.min(navigationPages, pageCount))));
+      }
+    }
+    return links;
+  }
+
+  public String host(int page) {
+    return "127.0.0." + (page % hostCount + 1);
+  }
+
+  public static String pageName(int page) {
+    return "page" + page + ".html";
+  }
+
+  private int pageNumber(String name) {
+    if (!name.startsWith("page") || !name.endsWith(".html")) {
+      return -1;
+    }
+    try {
+      int page = Integer.parseInt(name.substring("page".length(), name.length() - ".html".length()));
+      return page >= 0 && page < pageCount ? page : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 Alexei Barantsev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.stqa.linkchecker.fx;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphAggregatorTest {
+
+  private static class RecordingSink implements GraphAggregator.Sink {
+    private final List<String> events = new ArrayList<>();
+
+    @Override
+    public void node(String key, boolean group, int urls, boolean added) {
+      events.add((added ? "+" : "~") + (group ? "group " : "page ") + key + " " + urls);
+    }
+
+    @Override
+    public void edge(String from, String to, int links, boolean added) {
+      events.add((added ? "+" : "~") + "edge " + from + " -> " + to + " " + links);
+    }
+  }
+
+  @Test
+  void showsEveryPageAtPageLevel() {
+    GraphAggregator aggregator = new GraphAggregator(GraphDetail.PAGES);
+    aggregator.addPage("http://a/x/1.html", List.of("http://a/x/2.html"));
+    RecordingSink sink = new RecordingSink();
+    aggregator.flush(sink);
+
+    assertEquals(List.of("+page http://a/x/1.html 1", "+page http://a/x/2.html 1",
+      "+edge http://a/x/1.html -> http://a/x/2.html 1"), sink.events);
+    assertFalse(aggregator.isGroup("http://a/x/1.html"));
+  }
+
+  @Test
+  void countsLinksBetweenDirectories() {
+    GraphAggregator aggregator = new GraphAggregator(GraphDetail.DIRECTORIES);
+    aggregator.addPage("http://a/x/1.html", List.of("http://a/x/2.html", "http://a/y/1.html"));
+    aggregator.flush(new RecordingSink());
+    aggregator.addPage("http://a/x/2.html", List.of("http://a/y/2.html?q=1"));
+    aggregator.addPage("http://a/x/2.html", List.of("http://a/y/3.html"));
+    RecordingSink sink = new RecordingSink();
+    aggregator.flush(sink);
+
+    assertEquals(List.of("~group http://a/y/ 2", "~edge http://a/x/ -> http://a/y/ 2"), sink.events);
+    assertEquals(2, aggregator.nodeCount());
+    assertTrue(aggregator.isGroup("http://a/x/"));
+  }
+
+  @Test
+  void expandsHostIntoDirectories() {
+    GraphAggregator aggregator = new GraphAggregator(GraphDetail.HOSTS);
+    aggregator.addPage("http://a/x/1.html", List.of("http://a/y/1.html", "http://b/"));
+    aggregator.flush(new RecordingSink());
+    assertEquals(2, aggregator.nodeCount());
+    assertFalse(aggregator.expand("http://b/"));
+
+    assertTrue(aggregator.expand("http://a"));
+    assertEquals(0, aggregator.nodeCount());
+    aggregator.addPage("http://a/x/1.html", List.of("http://a/y/1.html", "http://b/"));
+    RecordingSink sink = new RecordingSink();
+    aggregator.flush(sink);
+
+    assertEquals(List.of("+group http://a/x/ 1", "+group http://a/y/ 1", "+group http://b 1",
+      "+edge http://a/x/ -> http://a/y/ 1", "+edge http://a/x/ -> http://b 1"), sink.events);
+  }
+}
@@ -51,6 +51,7 @@ public class ScannerModelTest {
       Thread.yield();
     }
     assertEquals(3, model.getGraph().getNodeCount());
+    assertEquals(3, model.getPages().size());
   }
 
   @Test